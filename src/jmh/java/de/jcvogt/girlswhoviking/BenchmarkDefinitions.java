@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Provides the definitions the benchmarks run against: either one of the definitions from the classpath or a
+ * synthetic, large one.
+ *
+ * @author Michael J. Simons
+ */
+public final class BenchmarkDefinitions {
+
+	/**
+	 * Name of the synthetic definition.
+	 */
+	public static final String SYNTHETIC = "synthetic";
+
+	/**
+	 * Loads the definition with the given name.
+	 *
+	 * @param name either {@link #SYNTHETIC} or the name of a resource on the classpath
+	 * @return the definition
+	 */
+	public static Quiz.Definition load(String name) {
+		if (SYNTHETIC.equals(name)) {
+			return synthetic(64, 8, 16);
+		}
+		try (var in = BenchmarkDefinitions.class.getClassLoader().getResourceAsStream(name)) {
+			return new ObjectMapper().readValue(in, Quiz.Definition.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Creates a definition in which every second question uses explicit increments and the others the fallback
+	 * (the index of the answer is the index of the outcome).
+	 *
+	 * @param numQuestions the number of questions
+	 * @param numAnswers   the number of answers per question
+	 * @param numOutcomes  the number of outcomes, must not be less than {@code numAnswers}
+	 * @return a synthetic definition
+	 */
+	public static Quiz.Definition synthetic(int numQuestions, int numAnswers, int numOutcomes) {
+		var random = new Random(4711);
+		var outcomes = new ArrayList<Quiz.Outcome>(numOutcomes);
+		for (int i = 0; i < numOutcomes; ++i) {
+			outcomes.add(new Quiz.Outcome("Outcome" + i, "Der Titel " + i, "Beschreibung " + i, "Zitat " + i, null));
+		}
+		var questions = new ArrayList<Quiz.Question>(numQuestions);
+		for (int i = 0; i < numQuestions; ++i) {
+			var answers = new ArrayList<Quiz.Answer>(numAnswers);
+			for (int j = 0; j < numAnswers; ++j) {
+				List<Integer> increments = List.of();
+				if (i % 2 == 0) {
+					increments = random.ints(numAnswers, 0, 4).boxed().toList();
+				}
+				answers.add(new Quiz.Answer("Antwort " + j, increments));
+			}
+			questions.add(new Quiz.Question("Frage " + i, answers));
+		}
+		return new Quiz.Definition(outcomes, questions);
+	}
+
+	private BenchmarkDefinitions() {
+	}
+}
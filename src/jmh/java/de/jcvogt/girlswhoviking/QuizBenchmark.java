@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the hot paths of {@link Quiz}. Run with {@code ./mvnw -Pbenchmarks -DskipTests verify}.
+ *
+ * @author Michael J. Simons
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QuizBenchmark {
+
+	@Param({"questions.json", BenchmarkDefinitions.SYNTHETIC})
+	String definitionName;
+
+	private CompiledDefinition compiledDefinition;
+
+	private Quiz.Question question;
+
+	private Quiz quizInProgress;
+
+	private Quiz finishedQuiz;
+
+	private int[] finishedCounts;
+
+	private int idx;
+
+	private SplittableRandom answers;
+
+	@Setup
+	public void setup() {
+		compiledDefinition = CompiledDefinition.of(BenchmarkDefinitions.load(definitionName)).validate();
+		question = compiledDefinition.definition().questions().get(0);
+		quizInProgress = new Quiz(compiledDefinition);
+		answers = new SplittableRandom(4711);
+
+		finishedQuiz = new Quiz(compiledDefinition);
+		while (!finishedQuiz.isDone()) {
+			finishedQuiz.evaluate(0);
+		}
+		finishedCounts = finishedQuiz.getState().counts();
+	}
+
+	/**
+	 * Evaluates a random answer for the current question, resetting the quiz when all questions have been answered.
+	 *
+	 * @return the done flag
+	 */
+	@Benchmark
+	public boolean evaluate() {
+		var done = quizInProgress.evaluate(answers.nextInt(compiledDefinition.numberOfAnswers(idx++)));
+		if (done) {
+			quizInProgress.reset();
+			idx = 0;
+		}
+		return done;
+	}
+
+	@Benchmark
+	public Optional<Quiz.Outcome> getResult() {
+		return finishedQuiz.getResult();
+	}
+
+	@Benchmark
+	public int selectOutcome() {
+		return CompiledDefinition.selectOutcome(finishedCounts, ThreadLocalRandom.current());
+	}
+
+	@Benchmark
+	public Quiz.CurrentQuestion newCurrentQuestion() {
+		return new Quiz.CurrentQuestion(question, 1, false);
+	}
+
+	@Benchmark
+	public Optional<Quiz.CurrentQuestion> getCurrentQuestion() {
+		return quizInProgress.getCurrentQuestion();
+	}
+
+	@Benchmark
+	public String getRandomName() {
+		return quizInProgress.getRandomName();
+	}
+}
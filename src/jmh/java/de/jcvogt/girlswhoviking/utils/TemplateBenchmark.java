@@ -0,0 +1,161 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import de.jcvogt.girlswhoviking.BenchmarkDefinitions;
+import de.jcvogt.girlswhoviking.Quiz;
+import io.quarkus.qute.Engine;
+import io.quarkus.qute.EvalContext;
+import io.quarkus.qute.NamespaceResolver;
+import io.quarkus.qute.ReflectionValueResolver;
+import io.quarkus.qute.Results;
+import io.quarkus.qute.Template;
+import io.quarkus.qute.ValueResolver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks rendering of the Qute templates. The templates are rendered with a standalone engine that resolves
+ * values via reflection instead of the resolvers Quarkus generates at build time, so absolute numbers are a
+ * pessimistic estimate; they are meant to compare changes to templates and data.
+ *
+ * @author Michael J. Simons
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateBenchmark {
+
+	@Param({"questions.json", BenchmarkDefinitions.SYNTHETIC})
+	String definitionName;
+
+	private Template indexTemplate;
+
+	private Template quizTemplate;
+
+	private Template resultTemplate;
+
+	private Quiz quiz;
+
+	private Quiz.Outcome outcome;
+
+	@Setup
+	public void setup() {
+		var engine = Engine.builder()
+			.addDefaults()
+			.addValueResolver(new ReflectionValueResolver())
+			.addValueResolver(new OptionalOrElseResolver())
+			.addNamespaceResolver(NamespaceResolver.builder("str").resolve(TemplateBenchmark::str).build())
+			.addNamespaceResolver(NamespaceResolver.builder("asset").resolve(TemplateBenchmark::asset).build())
+			.addNamespaceResolver(NamespaceResolver.builder("cdi")
+				.resolve(ctx -> "gitId".equals(ctx.getName()) ? new GitId("4711", Optional.empty()) : Results.NotFound.from(ctx))
+				.build())
+			.build();
+		engine.putTemplate("base", engine.parse(read("base")));
+		indexTemplate = engine.parse(read("index"));
+		quizTemplate = engine.parse(read("quiz"));
+		resultTemplate = engine.parse(read("result"));
+
+		var definition = BenchmarkDefinitions.load(definitionName);
+		quiz = new Quiz(definition);
+		outcome = definition.outcomes().get(0);
+	}
+
+	@Benchmark
+	public String renderIndex() {
+		return indexTemplate.data("twitter_image", URI.create("https://somehost/img/banner_w_1500.png")).render();
+	}
+
+	@Benchmark
+	public String renderQuiz() {
+		return quizTemplate
+			.data("quiz", quiz)
+			.data("base", "/")
+			.data("twitter_image", URI.create("https://somehost/img/banner_w_1500.png"))
+			.render();
+	}
+
+	@Benchmark
+	public String renderResult() {
+		return resultTemplate.data("result", outcome).data("base", "/").render();
+	}
+
+	private static CompletionStage<Object> str(EvalContext ctx) {
+		return ctx.evaluate(ctx.getParams().get(0)).thenApply(value -> switch (ctx.getName()) {
+			case "l" -> StrExtensions.l((String) value);
+			case "urlEncode" -> StrExtensions.urlEncode((String) value);
+			default -> Results.NotFound.from(ctx);
+		});
+	}
+
+	private static CompletionStage<Object> asset(EvalContext ctx) {
+		var segments = ctx.getParams().stream().map(p -> ctx.evaluate(p).toCompletableFuture()).toList();
+		return CompletableFuture.allOf(segments.toArray(CompletableFuture[]::new))
+			.thenApply(v -> {
+				var path = segments.stream().map(f -> (String) f.join()).toArray(String[]::new);
+				return "srcset".equals(ctx.getName()) ? Assets.srcset(path) : Assets.url(path);
+			});
+	}
+
+	private static String read(String name) {
+		try (var in = TemplateBenchmark.class.getClassLoader().getResourceAsStream("templates/" + name + ".qute.html")) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Quarkus generates a resolver for {@code Optional#orElse(Object)}, the standalone engine needs a manual one.
+	 */
+	static final class OptionalOrElseResolver implements ValueResolver {
+
+		@Override
+		public boolean appliesTo(EvalContext context) {
+			return context.getBase() instanceof Optional<?> && "orElse".equals(context.getName());
+		}
+
+		@Override
+		public CompletionStage<Object> resolve(EvalContext context) {
+			var optional = (Optional<?>) context.getBase();
+			return optional.isPresent() ?
+				CompletableFuture.completedFuture(optional.get()) :
+				context.evaluate(context.getParams().get(0));
+		}
+	}
+}
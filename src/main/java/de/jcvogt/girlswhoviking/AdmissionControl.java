@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a request that changes the state of a quiz or scores one is handled at all. Requests of clients
+ * that have exceeded their rate are rejected instead of queued: Each client gets a token bucket of {@literal burst}
+ * tokens that refills at {@literal rate} tokens per second. Clients, identified by their (forwarded) address, are
+ * hashed onto a fixed number of stripes, clients sharing a stripe share the bucket. A bucket is stored as the single
+ * point in time at which it will be full again (the "theoretical arrival time" of GCRA), so that taking a token is one
+ * compare-and-set without any locks or allocations.
+ * <p>
+ * The rate is only limited when configured. There is no cap on the number of requests in flight: The handlers run to
+ * completion on the I/O thread that received the request, so requests never queue up behind admitted ones. The
+ * number of rejected requests is published as a metric.
+ *
+ * @author Michael J. Simons
+ */
+final class AdmissionControl {
+
+	private final long intervalNanos;
+
+	private final long toleranceNanos;
+
+	private final LongSupplier ticker;
+
+	/**
+	 * Offsets the stored times, so that an untouched stripe is a full bucket.
+	 */
+	private final long origin;
+
+	private final AtomicLongArray buckets;
+
+	private final Counter rateLimited;
+
+	AdmissionControl(OptionalDouble rate, int burst, int stripes, MeterRegistry registry) {
+		this(rate, burst, stripes, registry, System::nanoTime);
+	}
+
+	AdmissionControl(OptionalDouble rate, int burst, int stripes, MeterRegistry registry, LongSupplier ticker) {
+
+		if (rate.isPresent() && !(rate.getAsDouble() > 0)) {
+			throw new IllegalArgumentException("The rate must be positive.");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("The burst must be at least one.");
+		}
+		if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException("The number of stripes must be a power of two.");
+		}
+		this.intervalNanos = rate.isPresent()
+			? Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate.getAsDouble()))
+			: 0;
+		this.toleranceNanos = intervalNanos * burst;
+		this.ticker = ticker;
+		this.origin = ticker.getAsLong() - toleranceNanos;
+		this.buckets = rate.isPresent() ? new AtomicLongArray(stripes) : null;
+
+		this.rateLimited = Counter.builder("quiz.admission.rejected")
+			.description("Number of requests rejected by the admission control")
+			.tag("cause", "rate")
+			.register(registry);
+	}
+
+	/**
+	 * Tries to admit a request of the given client.
+	 *
+	 * @param client the address of the client
+	 * @return {@literal true} if the request may be handled, {@literal false} if the client has exceeded its rate
+	 */
+	boolean admit(String client) {
+
+		if (buckets != null && !takeToken(client)) {
+			rateLimited.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * {@return the number of whole seconds until a rejected client should try again, at least one}
+	 */
+	long retryAfterSeconds() {
+		return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(intervalNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+	}
+
+	private boolean takeToken(String client) {
+
+		var hash = client.hashCode();
+		var stripe = (hash ^ (hash >>> 16)) & (buckets.length() - 1);
+		var now = ticker.getAsLong() - origin;
+		while (true) {
+			var full = buckets.get(stripe);
+			var next = Math.max(full, now) + intervalNanos;
+			if (next - now > toleranceNanos) {
+				return false;
+			}
+			if (buckets.compareAndSet(stripe, full, next)) {
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.smallrye.common.annotation.NonBlocking;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Serves a snapshot of the {@link QuizAnalytics live analytics} and the totals of the {@link ResultLog result log} as
+ * JSON. Reading the counters doesn't block, so the snapshots are created on the I/O thread.
+ *
+ * @author Michael J. Simons
+ */
+@Path("/analytics")
+@NonBlocking
+public class AnalyticsResource {
+
+	private final QuizAnalytics quizAnalytics;
+
+	private final ResultLog resultLog;
+
+	public AnalyticsResource(QuizAnalytics quizAnalytics, ResultLog resultLog) {
+		this.quizAnalytics = quizAnalytics;
+		this.resultLog = resultLog;
+	}
+
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<QuizAnalytics.QuizStatistics> get() {
+		return quizAnalytics.snapshot();
+	}
+
+	@GET
+	@Path("results")
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<ResultLog.Total> results() {
+		return resultLog.totals();
+	}
+}
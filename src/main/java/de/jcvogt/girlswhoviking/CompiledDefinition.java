@@ -0,0 +1,450 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import de.jcvogt.girlswhoviking.Quiz.Definition;
+import de.jcvogt.girlswhoviking.Quiz.Outcome;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.function.IntUnaryOperator;
+import java.util.random.RandomGenerator;
+
+/**
+ * A {@link Definition} compiled into an immutable scoring matrix. The rules of how an answer increments the counts
+ * per outcome are resolved once, so that scoring an answer is a plain loop over an {@code int[]} and selecting the
+ * result doesn't allocate anything.
+ * <p>
+ * An answer either provides an increment per answer of its question, which is then added to the outcome with the
+ * same index, or it increments the outcome that has the same index as the answer itself by one.
+ * <p>
+ * The orders in which the answers of a question are presented are precomputed as well: All permutations for questions
+ * with up to four answers, a fixed set of shuffled orders for larger ones. A quiz picks one of them based on its seed,
+ * so that the order is stable across requests and rendering a question doesn't create any list.
+ * <p>
+ * For each question and pair of outcomes, the most one outcome can still gain on the other in the remaining questions
+ * is precomputed, so that a quiz can tell after each answer whether its outcome is {@link #decidedOutcome(int, int[])
+ * already decided}.
+ *
+ * @author Michael J. Simons
+ */
+public final class CompiledDefinition {
+
+	/**
+	 * Compiles the given definition. Answers that cannot be scored are not rejected here, but only when being
+	 * evaluated or by {@link #validate()}.
+	 *
+	 * @param definition the definition to compile
+	 * @return the compiled definition
+	 */
+	public static CompiledDefinition of(Definition definition) {
+		return new CompiledDefinition(definition);
+	}
+
+	static final int MAX_PERMUTATIONS = 24;
+
+	/**
+	 * Salts for deriving the preview and tie-breaks from the seed of a quiz, distinct from the index of any question.
+	 */
+	private static final int PREVIEW = -1;
+
+	private static final int TIE_BREAK = -2;
+
+	private final Definition definition;
+
+	private final String version;
+
+	private final int numberOfOutcomes;
+
+	/**
+	 * The increments per question, answer and outcome. A {@literal null} row denotes an answer that cannot be scored.
+	 */
+	private final int[][][] increments;
+
+	private final List<String> problems;
+
+	/**
+	 * The possible orders of the answers per question.
+	 */
+	private final List<List<List<Integer>>> permutations;
+
+	private final List<Optional<Outcome>> results;
+
+	/**
+	 * The most outcome {@code j} can gain on outcome {@code i} in the questions from {@code q} on, at
+	 * {@code [q][i * numberOfOutcomes + j]}. The row after the last question is all zeros.
+	 */
+	private final int[][] remainingSwing;
+
+	private CompiledDefinition(Definition definition) {
+
+		this.definition = definition;
+		this.version = hash(definition);
+		this.numberOfOutcomes = definition.outcomes().size();
+
+		var questions = definition.questions();
+		var newProblems = new ArrayList<String>();
+		this.increments = new int[questions.size()][][];
+		for (int i = 0; i < questions.size(); i++) {
+			var answers = questions.get(i).answers();
+			this.increments[i] = new int[answers.size()][];
+			for (int j = 0; j < answers.size(); j++) {
+				var answerIncrements = answers.get(j).increments();
+				int[] row = null;
+				if (answerIncrements.size() != answers.size()) {
+					if (j < numberOfOutcomes) {
+						row = new int[numberOfOutcomes];
+						row[j] = 1;
+					}
+				} else if (answerIncrements.size() <= numberOfOutcomes) {
+					row = new int[numberOfOutcomes];
+					for (int k = 0; k < answerIncrements.size(); k++) {
+						row[k] = answerIncrements.get(k);
+					}
+				}
+				if (row == null) {
+					newProblems.add("Answer %d of question %d cannot be scored".formatted(j + 1, i + 1));
+				}
+				this.increments[i][j] = row;
+			}
+		}
+		this.problems = List.copyOf(newProblems);
+		this.permutations = new ArrayList<>(questions.size());
+		for (int i = 0; i < questions.size(); i++) {
+			this.permutations.add(permutations(questions.get(i).answers().size(), i));
+		}
+		this.results = definition.outcomes().stream().map(Optional::of).toList();
+		this.remainingSwing = remainingSwing(increments, numberOfOutcomes);
+	}
+
+	private static int[][] remainingSwing(int[][][] increments, int numberOfOutcomes) {
+
+		var swing = new int[increments.length + 1][numberOfOutcomes * numberOfOutcomes];
+		for (int q = increments.length - 1; q >= 0; q--) {
+			for (int i = 0; i < numberOfOutcomes; i++) {
+				for (int j = 0; j < numberOfOutcomes; j++) {
+					var max = 0;
+					var scorable = false;
+					for (var row : increments[q]) {
+						if (row != null && (!scorable || row[j] - row[i] > max)) {
+							max = row[j] - row[i];
+							scorable = true;
+						}
+					}
+					swing[q][i * numberOfOutcomes + j] = swing[q + 1][i * numberOfOutcomes + j] + max;
+				}
+			}
+		}
+		return swing;
+	}
+
+	/**
+	 * Makes sure that every answer of every question can be scored.
+	 *
+	 * @return this definition
+	 * @throws IllegalArgumentException if the definition contains answers that cannot be scored
+	 */
+	public CompiledDefinition validate() {
+		if (!problems.isEmpty()) {
+			throw new IllegalArgumentException("Invalid definition: " + String.join(", ", problems));
+		}
+		return this;
+	}
+
+	public Definition definition() {
+		return definition;
+	}
+
+	/**
+	 * {@return a content based version of the definition, identical definitions have the same version}
+	 */
+	public String version() {
+		return version;
+	}
+
+	public int numberOfQuestions() {
+		return increments.length;
+	}
+
+	public int numberOfAnswers(int question) {
+		return increments[question].length;
+	}
+
+	public int numberOfOutcomes() {
+		return numberOfOutcomes;
+	}
+
+	/**
+	 * Picks the order in which the answers of a question are presented.
+	 *
+	 * @param question the 0-based index of the question
+	 * @param seed     the seed of the quiz
+	 * @return the indexes of the answers in the order they are presented, shared by all quizzes
+	 */
+	List<Integer> permutation(int question, int seed) {
+		var candidates = permutations.get(question);
+		return candidates.get(Math.floorMod(mix(seed, question), candidates.size()));
+	}
+
+	/**
+	 * Picks the outcome used for the preview on the pages of a quiz.
+	 *
+	 * @param seed the seed of the quiz
+	 * @return the outcome for the preview
+	 * @throws IndexOutOfBoundsException if there are no outcomes
+	 */
+	Outcome preview(int seed) {
+		return definition.outcomes().get(Math.floorMod(mix(seed, PREVIEW), numberOfOutcomes));
+	}
+
+	/**
+	 * Creates the possible orders of {@code n} answers: All of them if there are at most {@link #MAX_PERMUTATIONS},
+	 * otherwise that many shuffled orders, seeded with the index of the question so that all instances agree.
+	 */
+	static List<List<Integer>> permutations(int n, int question) {
+
+		var indexes = new int[n];
+		for (int i = 0; i < n; i++) {
+			indexes[i] = i;
+		}
+		var result = new ArrayList<List<Integer>>();
+		long factorial = 1;
+		for (int i = 2; i <= n && factorial <= MAX_PERMUTATIONS; i++) {
+			factorial *= i;
+		}
+		if (factorial <= MAX_PERMUTATIONS) {
+			do {
+				result.add(toList(indexes));
+			} while (nextPermutation(indexes));
+		} else {
+			var random = new SplittableRandom(question);
+			for (int i = 0; i < MAX_PERMUTATIONS; i++) {
+				for (int j = n - 1; j > 0; j--) {
+					var k = random.nextInt(j + 1);
+					var tmp = indexes[j];
+					indexes[j] = indexes[k];
+					indexes[k] = tmp;
+				}
+				result.add(toList(indexes));
+			}
+		}
+		return List.copyOf(result);
+	}
+
+	private static boolean nextPermutation(int[] values) {
+		var i = values.length - 2;
+		while (i >= 0 && values[i] >= values[i + 1]) {
+			--i;
+		}
+		if (i < 0) {
+			return false;
+		}
+		var j = values.length - 1;
+		while (values[j] <= values[i]) {
+			--j;
+		}
+		var tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+		for (int l = i + 1, r = values.length - 1; l < r; l++, r--) {
+			tmp = values[l];
+			values[l] = values[r];
+			values[r] = tmp;
+		}
+		return true;
+	}
+
+	private static List<Integer> toList(int[] values) {
+		var list = new ArrayList<Integer>(values.length);
+		for (int value : values) {
+			list.add(value);
+		}
+		return List.copyOf(list);
+	}
+
+	/**
+	 * Derives a well distributed, non-negative value from a seed and a salt (the finalizer of SplitMix64).
+	 */
+	private static int mix(int seed, int salt) {
+		var z = ((long) seed << 32 | (salt & 0xFFFFFFFFL)) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return (int) ((z ^ (z >>> 31)) >>> 33);
+	}
+
+	private static String hash(Definition definition) {
+		try {
+			var digest = MessageDigest.getInstance("SHA-256")
+				.digest(definition.toString().getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest, 0, 6);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Adds the increments of the given answer to {@code counts}.
+	 *
+	 * @param question the 0-based index of the question
+	 * @param answer   the 0-based index of the answer
+	 * @param counts   the counts per outcome
+	 */
+	void score(int question, int answer, int[] counts) {
+		var row = increments[question][answer];
+		if (row == null) {
+			throw new IllegalStateException(
+				"Answer %d of question %d cannot be scored".formatted(answer + 1, question + 1));
+		}
+		for (int i = 0; i < row.length; i++) {
+			counts[i] += row[i];
+		}
+	}
+
+	/**
+	 * Checks whether the outcome of a quiz is fixed no matter how the remaining questions are answered, i.e. whether
+	 * one outcome leads every other one by more than the other could still gain. As ties are impossible then, the
+	 * outcome is the same that would be selected after the last question, regardless of the seed.
+	 *
+	 * @param question the 0-based index of the next question to be answered
+	 * @param counts   the counts per outcome after answering all questions before {@code question}
+	 * @return the index of the decided outcome or {@literal -1} if it is still open
+	 */
+	int decidedOutcome(int question, int[] counts) {
+
+		var swing = remainingSwing[question];
+		for (int i = 0; i < numberOfOutcomes; i++) {
+			if (isOutOfReach(i, counts, swing)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isOutOfReach(int outcome, int[] counts, int[] swing) {
+		for (int j = 0; j < numberOfOutcomes; j++) {
+			if (j != outcome && counts[outcome] - counts[j] <= swing[outcome * numberOfOutcomes + j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Scores a complete quiz at once, with the same rules as answering the questions one by one via
+	 * {@link Quiz#evaluate(Integer)} and selecting the outcome afterwards.
+	 *
+	 * @param answers the 0-based index of the selected answer for each question, in order of the questions
+	 * @param random  the source of randomness used to break ties
+	 * @return the index of the selected outcome or {@literal -1} if there are no questions or outcomes
+	 * @throws IllegalArgumentException if there isn't exactly one answer per question or an answer doesn't exist
+	 */
+	int evaluate(int[] answers, RandomGenerator random) {
+		if (answers.length != increments.length) {
+			throw new IllegalArgumentException(
+				"Expected %d answers, got %d".formatted(increments.length, answers.length));
+		}
+		for (int i = 0; i < answers.length; i++) {
+			if (answers[i] < 0 || answers[i] >= increments[i].length) {
+				throw new IllegalArgumentException("Illegal answer (%d) to question %d".formatted(answers[i], i + 1));
+			}
+		}
+		if (answers.length == 0) {
+			return -1;
+		}
+		var counts = new int[numberOfOutcomes];
+		for (int i = 0; i < answers.length; i++) {
+			score(i, answers[i], counts);
+		}
+		return selectOutcome(counts, random);
+	}
+
+	/**
+	 * Selects the outcome with the highest count. If there's more than one, a random one of those is picked.
+	 *
+	 * @param counts the counts per outcome
+	 * @param random the source of randomness used to break ties
+	 * @return the index of the selected outcome or {@literal -1} if there are no outcomes
+	 */
+	static int selectOutcome(int[] counts, RandomGenerator random) {
+		return selectOutcome(counts, (IntUnaryOperator) random::nextInt);
+	}
+
+	/**
+	 * Selects the outcome with the highest count. If there's more than one, the seed determines which of those is
+	 * picked, so that the same counts and seed always lead to the same outcome.
+	 *
+	 * @param counts the counts per outcome
+	 * @param seed   the seed of the quiz
+	 * @return the index of the selected outcome or {@literal -1} if there are no outcomes
+	 */
+	static int selectOutcome(int[] counts, int seed) {
+		return selectOutcome(counts, numberOfMaxima -> mix(seed, TIE_BREAK) % numberOfMaxima);
+	}
+
+	private static int selectOutcome(int[] counts, IntUnaryOperator pick) {
+		int max = Integer.MIN_VALUE;
+		int numberOfMaxima = 0;
+		int first = -1;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > max) {
+				max = counts[i];
+				numberOfMaxima = 1;
+				first = i;
+			} else if (counts[i] == max) {
+				++numberOfMaxima;
+			}
+		}
+		if (numberOfMaxima <= 1) {
+			return first;
+		}
+
+		var selected = pick.applyAsInt(numberOfMaxima);
+		int i = first;
+		while (selected > 0) {
+			if (counts[++i] == max) {
+				--selected;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @param name the name of an outcome
+	 * @return the shared optional result for the outcome with the given name, empty if there is none
+	 */
+	Optional<Outcome> result(String name) {
+		for (var result : results) {
+			if (result.get().name().equals(name)) {
+				return result;
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * @param outcome the index of the outcome
+	 * @return the shared optional result for the outcome with the given index
+	 */
+	Optional<Outcome> result(int outcome) {
+		return results.get(outcome);
+	}
+}
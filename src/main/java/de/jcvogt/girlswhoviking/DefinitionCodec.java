@@ -0,0 +1,212 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import de.jcvogt.girlswhoviking.Quiz.Answer;
+import de.jcvogt.girlswhoviking.Quiz.Definition;
+import de.jcvogt.girlswhoviking.Quiz.Outcome;
+import de.jcvogt.girlswhoviking.Quiz.Question;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Build step that validates the JSON definitions of a quiz and writes them in a compact binary format next to the
+ * original, {@code questions.json} becomes {@code questions.bin}. The binary format can be read with plain
+ * {@link DataInput} calls at startup, without Jackson and without reflection. Run by the {@literal exec-maven-plugin}
+ * during {@literal process-classes}, a definition that cannot be parsed or scored fails the build.
+ * <p>
+ * The binary version carries the SHA-256 hash of the JSON it has been compiled from, so that a binary version left
+ * behind by an earlier build in dev mode or in a quiz directory can be {@link #isCompiledFrom(byte[], byte[])
+ * recognized} and the edited JSON be used instead.
+ *
+ * @author Michael J. Simons
+ */
+public final class DefinitionCodec {
+
+	static final String EXTENSION = ".bin";
+
+	private static final int MAGIC = 0x47575644;
+
+	private static final int FORMAT_VERSION = 2;
+
+	private static final int HEADER_LENGTH = Integer.BYTES + 1;
+
+	private static final int SOURCE_HASH_LENGTH = 32;
+
+	/**
+	 * Entry point for the build.
+	 *
+	 * @param args the output directory of the build (usually {@literal target/classes}) followed by the names of the
+	 *             definitions to compile
+	 * @throws IOException if reading or writing a definition fails
+	 */
+	public static void main(String... args) throws IOException {
+		if (args.length < 2) {
+			throw new IllegalArgumentException("Usage: DefinitionCodec <classes directory> <definition>...");
+		}
+		var objectMapper = new ObjectMapper();
+		for (int i = 1; i < args.length; i++) {
+			compile(objectMapper, Path.of(args[0]), args[i]);
+		}
+	}
+
+	static Path compile(ObjectMapper objectMapper, Path classesDirectory, String name) throws IOException {
+
+		var source = Files.readAllBytes(classesDirectory.resolve(name));
+		var definition = objectMapper.readValue(source, Definition.class);
+		try {
+			CompiledDefinition.of(definition).validate();
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+		}
+
+		var target = classesDirectory.resolve(binaryName(name));
+		Files.write(target, encode(definition, source));
+		return target;
+	}
+
+	/**
+	 * {@return the name of the binary version of the given definition}
+	 *
+	 * @param name the name of a JSON definition
+	 */
+	static String binaryName(String name) {
+		var extension = name.lastIndexOf('.');
+		return (extension < 0 ? name : name.substring(0, extension)) + EXTENSION;
+	}
+
+	/**
+	 * {@return whether the given binary version has been compiled from the given JSON source}
+	 *
+	 * @param binary the binary version of a definition
+	 * @param source the JSON source of the definition
+	 */
+	static boolean isCompiledFrom(byte[] binary, byte[] source) {
+		return binary.length >= HEADER_LENGTH + SOURCE_HASH_LENGTH
+			&& Arrays.equals(binary, HEADER_LENGTH, HEADER_LENGTH + SOURCE_HASH_LENGTH,
+				hash(source), 0, SOURCE_HASH_LENGTH);
+	}
+
+	static byte[] encode(Definition definition, byte[] source) {
+
+		var bytes = new ByteArrayOutputStream();
+		try (var out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.write(hash(source));
+			out.writeInt(definition.outcomes().size());
+			for (var outcome : definition.outcomes()) {
+				writeString(out, outcome.name());
+				writeString(out, outcome.title());
+				writeString(out, outcome.description());
+				writeString(out, outcome.quote());
+				writeString(out, outcome.optionalLink());
+			}
+			out.writeInt(definition.questions().size());
+			for (var question : definition.questions()) {
+				writeString(out, question.value());
+				out.writeInt(question.answers().size());
+				for (var answer : question.answers()) {
+					writeString(out, answer.value());
+					out.writeInt(answer.increments().size());
+					for (var increment : answer.increments()) {
+						out.writeInt(increment);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	static Definition decode(byte[] bytes) {
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	static Definition decode(InputStream stream) {
+
+		try (var in = new DataInputStream(stream)) {
+			if (in.readInt() != MAGIC || in.readUnsignedByte() != FORMAT_VERSION) {
+				throw new IllegalArgumentException("Unsupported definition format.");
+			}
+			in.skipNBytes(SOURCE_HASH_LENGTH);
+			var outcomes = new ArrayList<Outcome>();
+			for (int i = in.readInt(); i > 0; --i) {
+				outcomes.add(
+					new Outcome(readString(in), readString(in), readString(in), readString(in), readString(in)));
+			}
+			var questions = new ArrayList<Question>();
+			for (int i = in.readInt(); i > 0; --i) {
+				var value = readString(in);
+				var answers = new ArrayList<Answer>();
+				for (int j = in.readInt(); j > 0; --j) {
+					var answer = readString(in);
+					var increments = new ArrayList<Integer>();
+					for (int k = in.readInt(); k > 0; --k) {
+						increments.add(in.readInt());
+					}
+					answers.add(new Answer(answer, increments));
+				}
+				questions.add(new Question(value, answers));
+			}
+			if (in.read() != -1) {
+				throw new IllegalArgumentException("Unexpected data after definition.");
+			}
+			return new Definition(outcomes, questions);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] hash(byte[] source) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(source);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private DefinitionCodec() {
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Watches a single file on a dedicated daemon thread and runs a callback after it has been changed. The directory of
+ * the file is watched, so that files replaced via rename (as many editors and deployment tools do) are picked up as
+ * well. Bursts of changes are coalesced into a single callback.
+ *
+ * @author Michael J. Simons
+ */
+final class DefinitionWatcher implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(DefinitionWatcher.class);
+
+	private static final long QUIET_PERIOD_MILLIS = 250;
+
+	private final Path file;
+
+	private final WatchService watchService;
+
+	private final Runnable onChange;
+
+	private final Thread thread;
+
+	/**
+	 * Starts watching the given file.
+	 *
+	 * @param file     the file to watch
+	 * @param onChange the callback, called on the watcher thread
+	 * @return the running watcher
+	 * @throws IOException if the directory of the file cannot be watched
+	 */
+	static DefinitionWatcher start(Path file, Runnable onChange) throws IOException {
+		var absoluteFile = file.toAbsolutePath();
+		var watchService = absoluteFile.getFileSystem().newWatchService();
+		absoluteFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+			StandardWatchEventKinds.ENTRY_MODIFY);
+		var watcher = new DefinitionWatcher(absoluteFile, watchService, onChange);
+		watcher.thread.start();
+		return watcher;
+	}
+
+	private DefinitionWatcher(Path file, WatchService watchService, Runnable onChange) {
+		this.file = file;
+		this.watchService = watchService;
+		this.onChange = onChange;
+		this.thread = new Thread(this::watch, "definition-watcher");
+		this.thread.setDaemon(true);
+	}
+
+	private void watch() {
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				var key = watchService.take();
+				var changed = false;
+				while (key != null) {
+					changed |= key.pollEvents().stream()
+						.anyMatch(event -> event.kind() == StandardWatchEventKinds.OVERFLOW
+							|| file.getFileName().equals(event.context()));
+					key.reset();
+					key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				if (changed) {
+					notifyChange();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// Closed while waiting for changes
+		}
+	}
+
+	private void notifyChange() {
+		try {
+			onChange.run();
+		} catch (RuntimeException e) {
+			LOGGER.errorf(e, "Could not process change of %s", file);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		thread.interrupt();
+		watchService.close();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The current definition of a quiz together with the most recent previous versions. New quizzes always use the
+ * current definition, quizzes that have been started before a new definition was activated can still be resolved by
+ * their version and finish on it.
+ * <p>
+ * Each quiz hosted by the application has its own instance, identified by the id of the quiz. The quiz configured
+ * via {@literal girlswhoviking.questions} uses the {@link #DEFAULT_ID default id}.
+ *
+ * @author Michael J. Simons
+ */
+final class Definitions {
+
+	static final int MAX_VERSIONS = 8;
+
+	static final String DEFAULT_ID = "";
+
+	private final Map<String, CompiledDefinition> versions = new LinkedHashMap<>(MAX_VERSIONS, 0.75f, false) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledDefinition> eldest) {
+			return size() > MAX_VERSIONS;
+		}
+	};
+
+	private final String id;
+
+	private volatile CompiledDefinition current;
+
+	Definitions(CompiledDefinition initial) {
+		this(DEFAULT_ID, initial);
+	}
+
+	Definitions(String id, CompiledDefinition initial) {
+		this.id = id;
+		this.current = initial;
+		this.versions.put(initial.version(), initial);
+	}
+
+	/**
+	 * {@return the id of the quiz}
+	 */
+	String id() {
+		return id;
+	}
+
+	/**
+	 * {@return the name of a cookie that is specific to this quiz}
+	 *
+	 * @param name the base name of the cookie
+	 */
+	String cookieName(String name) {
+		return id.isEmpty() ? name : name + "-" + id;
+	}
+
+	/**
+	 * {@return the definition used for new quizzes}
+	 */
+	CompiledDefinition current() {
+		return current;
+	}
+
+	/**
+	 * Looks up a definition by its {@link CompiledDefinition#version() version}.
+	 *
+	 * @param version the version to look up
+	 * @return the definition, or an empty optional if the version is unknown or too old
+	 */
+	Optional<CompiledDefinition> get(String version) {
+		var definition = current;
+		if (definition.version().equals(version)) {
+			return Optional.of(definition);
+		}
+		synchronized (versions) {
+			return Optional.ofNullable(versions.get(version));
+		}
+	}
+
+	/**
+	 * Makes the given definition the current one, unless it has the same version as the current one.
+	 *
+	 * @param definition the new definition
+	 * @return {@literal true} if the definition has been activated
+	 */
+	boolean activate(CompiledDefinition definition) {
+		synchronized (versions) {
+			if (current.version().equals(definition.version())) {
+				return false;
+			}
+			versions.remove(definition.version());
+			versions.put(definition.version(), definition);
+			current = definition;
+			return true;
+		}
+	}
+}
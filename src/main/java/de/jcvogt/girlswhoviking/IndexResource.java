@@ -15,35 +15,49 @@
  */
 package de.jcvogt.girlswhoviking;
 
-import io.quarkus.qute.Template;
-import io.quarkus.qute.TemplateInstance;
+import io.micrometer.core.annotation.Timed;
+import io.smallrye.common.annotation.NonBlocking;
 
 import java.net.URI;
-import java.util.Objects;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 /**
+ * Serves the pre-rendered index page directly on the I/O thread.
+ *
  * @author Michael J. Simons
  */
 @Path("/")
+@NonBlocking
 public class IndexResource {
 
-	private final Template indexTemplate;
+	private final PageCache pageCache;
+
+	private final boolean serverTiming;
 
-	public IndexResource(Template index) {
-		this.indexTemplate = Objects.requireNonNull(index, "The index template is required.");
+	public IndexResource(PageCache pageCache,
+		@ConfigProperty(name = "girlswhoviking.server-timing.enabled", defaultValue = "false") boolean serverTiming) {
+		this.pageCache = pageCache;
+		this.serverTiming = serverTiming;
 	}
 
 	@GET
 	@Produces(MediaType.TEXT_HTML)
-	public TemplateInstance get(@Context UriInfo uriInfo) {
-		return indexTemplate
-			.data("twitter_image", uriInfo.resolve(URI.create("/img/banner_w_1500.png")));
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "index", "quiz", "default"}, histogram = true)
+	public Response get(@Context UriInfo uriInfo, @Context Request request, @Context HttpHeaders headers) {
+		var timing = ServerTiming.start(serverTiming, "index");
+		var response = pageCache.index(uriInfo.resolve(URI.create("/img/banner_w_1500.png")), request, headers);
+		timing.mark(ServerTiming.Phase.RENDER);
+		return timing.addTo(response).build();
 	}
 }
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Response;
+
+/**
+ * Keeps quizzes on the server side, referenced by a random id in a cookie. Other than http sessions, the number of
+ * quizzes is bounded: Quizzes not accessed for a configurable time are evicted, and when the maximum number is
+ * reached, the oldest quiz that hasn't been accessed since the last eviction attempt makes room for the new one
+ * (a {@literal CLOCK} approximation of LRU). The bound is checked without locking, so concurrent requests may exceed
+ * it by the number of requests in flight. The bound is shared by all hosted quizzes, each of which uses its own
+ * cookie.
+ * <p>
+ * Live quizzes can be {@link #snapshot(Path) written} to a file and {@link #restore(Path, Function) restored} from it,
+ * so that a restart doesn't send everyone back to the first question. A snapshot contains the id of each session, the
+ * id of its quiz, how long it has been idle and the {@link QuizStateCodec compact state} of the quiz, followed by a
+ * CRC32C checksum.
+ * <p>
+ * The store publishes the number of live quizzes, an estimate of the heap they occupy, counters for created, evicted
+ * and restored quizzes and the time spent creating a quiz, including evictions.
+ *
+ * @author Michael J. Simons
+ */
+final class ManagedQuizStore implements QuizStore {
+
+	static final String COOKIE_NAME = "quiz-session";
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private static final int SNAPSHOT_MAGIC = 0x47575353;
+
+	private static final int SNAPSHOT_FORMAT = 1;
+
+	private static final int ID_LENGTH = 16;
+
+	/**
+	 * A stored quiz.
+	 */
+	private static final class Session {
+
+		final String id;
+
+		final String quizId;
+
+		volatile Quiz quiz;
+
+		volatile long lastAccess;
+
+		volatile boolean referenced;
+
+		Session(String id, String quizId, Quiz quiz, long now) {
+			this.id = id;
+			this.quizId = quizId;
+			this.quiz = quiz;
+			this.lastAccess = now;
+		}
+	}
+
+	private final SecureRandom random = new SecureRandom();
+
+	private final int maxSessions;
+
+	private final long maxIdleNanos;
+
+	private final LongSupplier ticker;
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * All sessions in order of creation, used as the clock for evictions.
+	 */
+	private final Queue<Session> clock = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Quizzes that have been created during the current request and whose id still needs to be sent.
+	 */
+	private final Map<Quiz, Session> newSessions = new ConcurrentHashMap<>();
+
+	private final AtomicLong nextSweep;
+
+	private final Counter created;
+
+	private final Counter evictedIdle;
+
+	private final Counter evictedCapacity;
+
+	private final Counter restored;
+
+	private final Timer creation;
+
+	ManagedQuizStore(int maxSessions, Duration maxIdle, MeterRegistry registry) {
+		this(maxSessions, maxIdle, registry, System::nanoTime);
+	}
+
+	ManagedQuizStore(int maxSessions, Duration maxIdle, MeterRegistry registry, LongSupplier ticker) {
+
+		if (maxSessions < 1) {
+			throw new IllegalArgumentException("At least one session must be allowed.");
+		}
+		this.maxSessions = maxSessions;
+		this.maxIdleNanos = maxIdle.toNanos();
+		this.ticker = ticker;
+		this.nextSweep = new AtomicLong(ticker.getAsLong() + sweepInterval());
+
+		Gauge.builder("quiz.sessions.live", sessions, Map::size)
+			.description("Number of quizzes currently kept")
+			.register(registry);
+		Gauge.builder("quiz.sessions.memory", this, store -> store.estimatedMemory())
+			.description("Estimated heap occupied by the quizzes currently kept")
+			.baseUnit("bytes")
+			.register(registry);
+		this.created = Counter.builder("quiz.sessions.created")
+			.description("Number of quizzes created")
+			.register(registry);
+		this.evictedIdle = Counter.builder("quiz.sessions.evicted")
+			.description("Number of quizzes evicted")
+			.tag("cause", "idle")
+			.register(registry);
+		this.evictedCapacity = Counter.builder("quiz.sessions.evicted")
+			.description("Number of quizzes evicted")
+			.tag("cause", "capacity")
+			.register(registry);
+		this.restored = Counter.builder("quiz.sessions.restored")
+			.description("Number of quizzes restored from a snapshot")
+			.register(registry);
+		this.creation = Metrics.timer(registry, "quiz.sessions.creation", "Time spent creating a quiz");
+	}
+
+	@Override
+	public Quiz load(Definitions definitions, HttpHeaders headers) {
+
+		var now = ticker.getAsLong();
+		var session = lookup(definitions, headers);
+		if (session != null && !isIdle(session, now)) {
+			session.lastAccess = now;
+			session.referenced = true;
+			return session.quiz;
+		}
+		if (session != null && sessions.remove(session.id, session)) {
+			evictedIdle.increment();
+		}
+		var quiz = newSession(definitions, now).quiz;
+		creation.record(ticker.getAsLong() - now, TimeUnit.NANOSECONDS);
+		return quiz;
+	}
+
+	@Override
+	public Quiz restart(Definitions definitions, Quiz quiz, HttpHeaders headers) {
+
+		var definition = definitions.current();
+		var session = lookup(definitions, headers);
+		if (quiz.getCompiledDefinition() == definition || session == null || session.quiz != quiz) {
+			quiz.reset();
+			return quiz;
+		}
+		var newQuiz = new Quiz(definition);
+		session.quiz = newQuiz;
+		return newQuiz;
+	}
+
+	@Override
+	public Response.ResponseBuilder save(Definitions definitions, Quiz quiz, Response.ResponseBuilder response) {
+		var session = newSessions.remove(quiz);
+		if (session == null) {
+			return response;
+		}
+		var cookie = new Cookie(definitions.cookieName(COOKIE_NAME), session.id, "/", null);
+		return response.cookie(new NewCookie(cookie, null, NewCookie.DEFAULT_MAX_AGE, null, false, true));
+	}
+
+	/**
+	 * {@return the number of quizzes currently kept}
+	 */
+	int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * {@return a rough estimate of the heap occupied by the quizzes currently kept, in bytes}
+	 */
+	long estimatedMemory() {
+		long memory = 0;
+		for (var session : sessions.values()) {
+			var definition = session.quiz.getCompiledDefinition();
+			memory += estimateSessionSize(definition.numberOfOutcomes(), definition.numberOfQuestions());
+		}
+		return memory;
+	}
+
+	/**
+	 * Writes all quizzes that are not idle to the given file, replacing it atomically.
+	 *
+	 * @param file the file to write
+	 * @return the number of quizzes written
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	int snapshot(Path file) throws IOException {
+
+		var now = ticker.getAsLong();
+		var out = new ByteArrayOutputStream();
+		var header = ByteBuffer.allocate(Integer.BYTES + 1 + Long.BYTES)
+			.putInt(SNAPSHOT_MAGIC)
+			.put((byte) SNAPSHOT_FORMAT)
+			.putLong(System.currentTimeMillis());
+		out.writeBytes(header.array());
+
+		var live = new ArrayList<Session>();
+		for (var session : sessions.values()) {
+			if (!isIdle(session, now)) {
+				live.add(session);
+			}
+		}
+		live.sort(Comparator.comparingLong((Session session) -> session.lastAccess - now).reversed());
+		QuizStateCodec.writeVarInt(out, live.size());
+		for (var session : live) {
+			out.writeBytes(DECODER.decode(session.id));
+			var quizId = session.quizId.getBytes(StandardCharsets.UTF_8);
+			QuizStateCodec.writeVarInt(out, quizId.length);
+			out.writeBytes(quizId);
+			QuizStateCodec.writeVarInt(out, (int) Math.min(Integer.MAX_VALUE,
+				TimeUnit.NANOSECONDS.toMillis(now - session.lastAccess)));
+			var state = QuizStateCodec.encode(session.quiz);
+			QuizStateCodec.writeVarInt(out, state.length);
+			out.writeBytes(state);
+		}
+		var checksum = new CRC32C();
+		checksum.update(out.toByteArray());
+		out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).array());
+
+		var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(tmp, out.toByteArray());
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return live.size();
+	}
+
+	/**
+	 * Restores the quizzes from a snapshot and deletes it afterwards, so that it is not restored a second time. The
+	 * time since the snapshot has been taken counts as idle time. Quizzes whose quiz or definition is no longer known
+	 * are skipped, as are the least recently used quizzes once the store is full.
+	 *
+	 * @param file        the snapshot
+	 * @param definitions resolves the id of a quiz to its definitions
+	 * @return the number of restored quizzes, {@literal 0} if there is no snapshot or it is corrupt
+	 * @throws IOException if the snapshot cannot be read or deleted
+	 */
+	int restore(Path file, Function<String, Optional<Definitions>> definitions) throws IOException {
+
+		if (!Files.isRegularFile(file)) {
+			return 0;
+		}
+		var bytes = Files.readAllBytes(file);
+		Files.delete(file);
+		if (bytes.length < Integer.BYTES * 2 + 1 + Long.BYTES) {
+			return 0;
+		}
+		var checksum = new CRC32C();
+		checksum.update(bytes, 0, bytes.length - Integer.BYTES);
+		var in = ByteBuffer.wrap(bytes);
+		if (in.getInt(bytes.length - Integer.BYTES) != (int) checksum.getValue()
+			|| in.getInt() != SNAPSHOT_MAGIC || in.get() != SNAPSHOT_FORMAT) {
+			return 0;
+		}
+
+		var now = ticker.getAsLong();
+		var downtime = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - in.getLong()));
+		var resolved = new HashMap<String, Optional<Definitions>>();
+		var restoredSessions = new ArrayList<Session>();
+		try {
+			var count = QuizStateCodec.readVarInt(in);
+			for (int i = 0; i < count && sessions.size() + restoredSessions.size() < maxSessions; ++i) {
+				var id = new byte[ID_LENGTH];
+				in.get(id);
+				var quizId = new byte[QuizStateCodec.readVarInt(in)];
+				in.get(quizId);
+				var idle = TimeUnit.MILLISECONDS.toNanos(QuizStateCodec.readVarInt(in)) + downtime;
+				var length = QuizStateCodec.readVarInt(in);
+				var state = in.slice(in.position(), length);
+				in.position(in.position() + length);
+
+				var quizDefinitions = resolved.computeIfAbsent(new String(quizId, StandardCharsets.UTF_8), definitions);
+				if (idle > maxIdleNanos || quizDefinitions.isEmpty()) {
+					continue;
+				}
+				try {
+					var quiz = QuizStateCodec.decode(quizDefinitions.get(), state);
+					restoredSessions.add(
+						new Session(ENCODER.encodeToString(id), quizDefinitions.get().id(), quiz, now - idle));
+				} catch (IllegalArgumentException | BufferUnderflowException e) {
+					// The definition of the quiz has changed in the meantime
+				}
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+			// Keep what has been read so far, the checksum matched after all
+		}
+
+		var numberOfRestored = 0;
+		for (int i = restoredSessions.size() - 1; i >= 0; --i) {
+			var session = restoredSessions.get(i);
+			if (sessions.putIfAbsent(session.id, session) == null) {
+				clock.offer(session);
+				++numberOfRestored;
+			}
+		}
+		restored.increment(numberOfRestored);
+		return numberOfRestored;
+	}
+
+	private Session lookup(Definitions definitions, HttpHeaders headers) {
+		var cookie = headers.getCookies().get(definitions.cookieName(COOKIE_NAME));
+		var session = cookie == null ? null : sessions.get(cookie.getValue());
+		return session == null || !session.quizId.equals(definitions.id()) ? null : session;
+	}
+
+	private Session newSession(Definitions definitions, long now) {
+
+		var sweep = nextSweep.get();
+		if (now - sweep >= 0 && nextSweep.compareAndSet(sweep, now + sweepInterval())) {
+			clock.removeIf(session -> evictIfIdle(session, now));
+		}
+		while (sessions.size() >= maxSessions) {
+			var candidate = clock.poll();
+			if (candidate == null) {
+				break;
+			}
+			if (candidate.referenced && sessions.get(candidate.id) == candidate) {
+				candidate.referenced = false;
+				clock.offer(candidate);
+			} else if (sessions.remove(candidate.id, candidate)) {
+				newSessions.remove(candidate.quiz);
+				evictedCapacity.increment();
+			}
+		}
+
+		var bytes = new byte[ID_LENGTH];
+		random.nextBytes(bytes);
+		var session = new Session(
+			ENCODER.encodeToString(bytes), definitions.id(), new Quiz(definitions.current()), now);
+		sessions.put(session.id, session);
+		clock.offer(session);
+		newSessions.put(session.quiz, session);
+		created.increment();
+		return session;
+	}
+
+	private boolean evictIfIdle(Session session, long now) {
+		if (sessions.get(session.id) != session) {
+			return true;
+		}
+		if (!isIdle(session, now)) {
+			return false;
+		}
+		if (sessions.remove(session.id, session)) {
+			newSessions.remove(session.quiz);
+			evictedIdle.increment();
+		}
+		return true;
+	}
+
+	private boolean isIdle(Session session, long now) {
+		return now - session.lastAccess > maxIdleNanos;
+	}
+
+	private long sweepInterval() {
+		return Math.max(Duration.ofSeconds(1).toNanos(), maxIdleNanos / 10);
+	}
+
+	/**
+	 * Estimates the retained size of one session on a 64-bit JVM with compressed references: The quiz itself, the
+	 * reference to its state, the state with its arrays of counts and answers, the session with its id and the nodes in
+	 * the map and in the clock. The id of the quiz is shared.
+	 *
+	 * @param numberOfOutcomes  the number of outcomes, determining the size of the counts
+	 * @param numberOfQuestions the number of questions, determining the size of the answers
+	 * @return the estimated size in bytes
+	 */
+	static long estimateSessionSize(int numberOfOutcomes, int numberOfQuestions) {
+		long quiz = align(12 + 4 * 3) + align(12 + 4);
+		long state = align(12 + 4 * 5);
+		long counts = align(16 + 4L * numberOfOutcomes);
+		long answers = align(16 + 4L * numberOfQuestions);
+		long session = align(12 + 4 + 4 + 4 + 8 + 1);
+		long id = align(12 + 4 + 4 + 1 + 1) + align(16 + 22);
+		long mapNode = align(12 + 4 + 4 + 4 + 4);
+		long queueNode = align(12 + 4 + 4);
+		return quiz + state + counts + answers + session + id + mapNode + queueNode;
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+
+import java.time.Duration;
+
+import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
+
+/**
+ * Timers of the application. All timers publish a histogram, so that percentiles such as the p99 latency can be
+ * aggregated over all instances in Prometheus via {@literal histogram_quantile}. This includes the timers of the
+ * endpoints ({@value #REQUESTS}) and of the http requests recorded by Quarkus ({@literal http.server.requests}).
+ *
+ * @author Michael J. Simons
+ */
+@Singleton
+class Metrics {
+
+	/**
+	 * Name of the timers of the endpoints.
+	 */
+	static final String REQUESTS = "quiz.requests";
+
+	/**
+	 * Lower bound of the histograms of the timers created here. Scoring an answer takes well below a millisecond, the
+	 * default lower bound of Micrometer.
+	 */
+	private static final Duration MINIMUM_EXPECTED = Duration.ofNanos(500);
+
+	private static final Duration MAXIMUM_EXPECTED = Duration.ofSeconds(10);
+
+	@Produces
+	@Singleton
+	MeterFilter requestHistograms() {
+		return new MeterFilter() {
+			@Override
+			public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+				if (!REQUESTS.equals(id.getName()) && !"http.server.requests".equals(id.getName())) {
+					return config;
+				}
+				return DistributionStatisticConfig.builder()
+					.percentilesHistogram(true)
+					.minimumExpectedValue((double) MINIMUM_EXPECTED.toNanos())
+					.maximumExpectedValue((double) MAXIMUM_EXPECTED.toNanos())
+					.build()
+					.merge(config);
+			}
+		};
+	}
+
+	/**
+	 * Creates a timer with a histogram.
+	 *
+	 * @param registry    the registry to register the timer with
+	 * @param name        the name of the timer
+	 * @param description the description of the timer
+	 * @param tags        additional tags as key value pairs
+	 * @return the registered timer
+	 */
+	static Timer timer(MeterRegistry registry, String name, String description, String... tags) {
+		return Timer.builder(name)
+			.description(description)
+			.tags(tags)
+			.publishPercentileHistogram()
+			.minimumExpectedValue(MINIMUM_EXPECTED)
+			.maximumExpectedValue(MAXIMUM_EXPECTED)
+			.register(registry);
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import de.jcvogt.girlswhoviking.utils.ContentCodings;
+import de.jcvogt.girlswhoviking.utils.GitId;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.qute.Template;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Caches pages that only depend on the requested host or on an outcome as pre-encoded UTF-8 and gzip bytes. The
+ * cache is dropped as soon as the definition of the default quiz changes. The number of hosts is bounded, as the host
+ * is under control of the client; pages for hosts exceeding that number are rendered on each request. The number of
+ * result pages is bounded as well, as there is one per outcome of each hosted quiz.
+ * <p>
+ * Responses carry a strong {@literal ETag} derived from the deployed commit, the version of the definition and the
+ * page itself, so that conditional requests are answered with {@literal 304} without touching the cache at all.
+ * Validators are omitted when the commit is unknown, i.e. during development.
+ *
+ * @author Michael J. Simons
+ */
+@ApplicationScoped
+class PageCache {
+
+	static final MediaType TEXT_HTML_UTF8 = MediaType.TEXT_HTML_TYPE.withCharset(StandardCharsets.UTF_8.name());
+
+	static final String NO_STORE = "no-store";
+
+	private static final String PRIVATE_NO_CACHE = "private, no-cache";
+
+	/**
+	 * A rendered page.
+	 *
+	 * @param utf8 the UTF-8 encoded page
+	 * @param gzip the gzipped page
+	 */
+	record Page(byte[] utf8, byte[] gzip) {
+	}
+
+	/**
+	 * Key of a result page.
+	 *
+	 * @param basePath the path of the quiz
+	 * @param outcome  the outcome
+	 */
+	private record ResultKey(String basePath, Quiz.Outcome outcome) {
+	}
+
+	private final Template indexTemplate;
+
+	private final Template resultTemplate;
+
+	private final QuizService quizService;
+
+	private final GitId gitId;
+
+	private final int maxHosts;
+
+	private final int maxResults;
+
+	private final String publicCacheControl;
+
+	private final Map<String, Page> indexPages = new ConcurrentHashMap<>();
+
+	private final Map<ResultKey, Page> resultPages = new ConcurrentHashMap<>();
+
+	private final Timer indexRenderTimer;
+
+	private final Timer resultRenderTimer;
+
+	private volatile CompiledDefinition renderedDefinition;
+
+	PageCache(Template index, Template result, QuizService quizService, GitId gitId,
+		@ConfigProperty(name = "girlswhoviking.page-cache.max-hosts", defaultValue = "16") int maxHosts,
+		@ConfigProperty(name = "girlswhoviking.page-cache.max-results", defaultValue = "256") int maxResults,
+		@ConfigProperty(name = "girlswhoviking.http.max-age", defaultValue = "300") int maxAge,
+		MeterRegistry meterRegistry) {
+		this.indexTemplate = Objects.requireNonNull(index, "The index template is required.");
+		this.resultTemplate = Objects.requireNonNull(result, "The result template is required.");
+		this.quizService = quizService;
+		this.gitId = gitId;
+		this.maxHosts = maxHosts;
+		this.maxResults = maxResults;
+		this.publicCacheControl = "public, max-age=" + maxAge;
+		this.indexRenderTimer = Metrics.timer(meterRegistry, "quiz.template.render", "Time spent rendering a template",
+			"template", "index");
+		this.resultRenderTimer = Metrics.timer(meterRegistry, "quiz.template.render", "Time spent rendering a template",
+			"template", "result");
+	}
+
+	/**
+	 * Creates a response for the index page. The index page is the same for all users and can be cached publicly.
+	 *
+	 * @param twitterImage the absolute URI of the image used for twitter cards
+	 * @param request      the current request, used to evaluate preconditions
+	 * @param headers      the headers of the current request
+	 * @return a response builder
+	 */
+	Response.ResponseBuilder index(URI twitterImage, Request request, HttpHeaders headers) {
+		var host = twitterImage.toString();
+		return respond(quizService.getCompiledDefinition(), request, headers, host, publicCacheControl,
+			() -> indexPage(twitterImage));
+	}
+
+	/**
+	 * Creates a response for the page of the given outcome. The page must only be cached privately.
+	 *
+	 * @param definition the definition the outcome belongs to
+	 * @param basePath   the path of the quiz, used for links on the page
+	 * @param outcome    the outcome to render
+	 * @param request    the current request, used to evaluate preconditions
+	 * @param headers    the headers of the current request
+	 * @return a response builder
+	 */
+	Response.ResponseBuilder result(CompiledDefinition definition, String basePath, Quiz.Outcome outcome,
+		Request request, HttpHeaders headers) {
+		return respond(definition, request, headers, basePath + outcome.name(), PRIVATE_NO_CACHE,
+			() -> resultPage(basePath, outcome));
+	}
+
+	/**
+	 * Creates a response for the shareable page of the given outcome. Other than the result of a quiz taken by the
+	 * current user, the page is addressed by the outcome itself and can therefore be cached publicly.
+	 *
+	 * @param definition the definition the outcome belongs to
+	 * @param basePath   the path of the quiz, used for links on the page
+	 * @param outcome    the outcome to render
+	 * @param request    the current request, used to evaluate preconditions
+	 * @param headers    the headers of the current request
+	 * @return a response builder
+	 */
+	Response.ResponseBuilder sharedResult(CompiledDefinition definition, String basePath, Quiz.Outcome outcome,
+		Request request, HttpHeaders headers) {
+		return respond(definition, request, headers, basePath + outcome.name(), publicCacheControl,
+			() -> resultPage(basePath, outcome));
+	}
+
+	Page indexPage(URI twitterImage) {
+		return get(indexPages, twitterImage.toString(), maxHosts,
+			() -> indexRenderTimer.record(() -> indexTemplate.data("twitter_image", twitterImage).render()));
+	}
+
+	Page resultPage(String basePath, Quiz.Outcome outcome) {
+		return get(resultPages, new ResultKey(basePath, outcome), maxResults,
+			() -> resultRenderTimer.record(
+				() -> resultTemplate.data("result", outcome).data("base", basePath).render()));
+	}
+
+	private Response.ResponseBuilder respond(CompiledDefinition definition, Request request, HttpHeaders headers,
+		String discriminator, String cacheControl, Supplier<Page> page) {
+
+		var gzip = ContentCodings.acceptsGzip(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+		EntityTag entityTag = null;
+		if (!gitId.isUnknown()) {
+			entityTag = new EntityTag("%s-%s-%08x%s".formatted(gitId.getAbbrev(), definition.version(),
+				discriminator.hashCode(), gzip ? "-gz" : ""));
+			var notModified = request.evaluatePreconditions(entityTag);
+			if (notModified != null) {
+				return notModified
+					.header(HttpHeaders.CACHE_CONTROL, cacheControl)
+					.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			}
+		}
+
+		var response = Response.ok()
+			.type(TEXT_HTML_UTF8)
+			.tag(entityTag)
+			.header(HttpHeaders.CACHE_CONTROL, cacheControl)
+			.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		return gzip ? response.entity(page.get().gzip()).encoding("gzip") : response.entity(page.get().utf8());
+	}
+
+	private <K> Page get(Map<K, Page> pages, K key, int maxSize, Supplier<String> renderer) {
+
+		var currentDefinition = quizService.getCompiledDefinition();
+		if (currentDefinition != renderedDefinition) {
+			synchronized (this) {
+				if (currentDefinition != renderedDefinition) {
+					indexPages.clear();
+					resultPages.clear();
+					renderedDefinition = currentDefinition;
+				}
+			}
+		}
+
+		var page = pages.get(key);
+		if (page == null) {
+			page = encode(renderer.get());
+			if (pages.size() < maxSize) {
+				pages.putIfAbsent(key, page);
+			}
+		}
+		return page;
+	}
+
+	private static Page encode(String content) {
+		var utf8 = content.getBytes(StandardCharsets.UTF_8);
+		var gzip = new ByteArrayOutputStream(utf8.length / 3);
+		try (var out = new GZIPOutputStream(gzip)) {
+			out.write(utf8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new Page(utf8, gzip.toByteArray());
+	}
+}
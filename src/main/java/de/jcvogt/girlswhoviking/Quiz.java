@@ -18,20 +18,30 @@ package de.jcvogt.girlswhoviking;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toList;
 
+import io.quarkus.qute.TemplateData;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 
 /**
+ * The records of the definition are read by Jackson and are therefore registered for reflection; the quiz and the
+ * records used in templates get generated value resolvers, so that neither of them depends on reflection in a native
+ * image.
+ *
  * @author Michael J. Simons
  */
+@TemplateData
+@TemplateData(target = Optional.class)
+@RegisterForReflection(targets = {Quiz.Definition.class, Quiz.Outcome.class, Quiz.Question.class, Quiz.Answer.class})
 public class Quiz implements Serializable {
 
 	/**
@@ -40,6 +50,7 @@ public class Quiz implements Serializable {
 	 * @param value      the textual value of the answer
 	 * @param increments the list of increments
 	 */
+	@TemplateData
 	public record Answer(String value, List<Integer> increments) {
 		public Answer {
 			increments = increments == null ? Collections.emptyList() : List.copyOf(increments);
@@ -67,6 +78,7 @@ public class Quiz implements Serializable {
 	 * @param quote        A quote
 	 * @param optionalLink An optional link
 	 */
+	@TemplateData
 	public record Outcome(String name, String title, String description, String quote, String optionalLink) {
 
 		public String formattedQuote() {
@@ -95,17 +107,30 @@ public class Quiz implements Serializable {
 	 * @param last    a flag if this is the last question
 	 * @param indexes randomized indexes
 	 */
+	@TemplateData
 	public record CurrentQuestion(Question value, int idx, boolean last, List<Integer> indexes) {
 
 		public CurrentQuestion {
-			if (indexes.size() != value.answers.size()) {
+			var numberOfAnswers = value.answers.size();
+			if (indexes.size() != numberOfAnswers) {
 				throw new IllegalArgumentException("Invalid number of indexes.");
 			}
-			if (indexes.stream().anyMatch(i -> i < 0 || i >= value.answers().size())) {
-				throw new IllegalArgumentException("Invalid index in index list.");
+			for (int i = 0; i < numberOfAnswers; i++) {
+				int index = indexes.get(i);
+				if (index < 0 || index >= numberOfAnswers) {
+					throw new IllegalArgumentException("Invalid index in index list.");
+				}
 			}
 		}
 
+		/**
+		 * Creates a question with a random order of answers. Quizzes use the stable, precomputed orders of their
+		 * definition instead, see {@link Quiz#getCurrentQuestion()}.
+		 *
+		 * @param value the underlying question
+		 * @param idx   the 1-based-index in the list of questions
+		 * @param last  a flag if this is the last question
+		 */
 		public CurrentQuestion(Question value, int idx, boolean last) {
 			this(value, idx, last, IntStream.range(0, value.answers().size()).boxed()
 				.collect(collectingAndThen(toList(), l -> {
@@ -123,113 +148,261 @@ public class Quiz implements Serializable {
 		}
 	}
 
+	/**
+	 * A snapshot of the progress of a quiz, detached from the definition it belongs to.
+	 *
+	 * @param idx     the 0-based index of the next question to be answered, i.e. the number of answered questions
+	 * @param counts  the counts per outcome, in the order of the outcomes of the definition
+	 * @param outcome the index of the chosen outcome or {@literal -1} if there is none yet; a quiz with an outcome is
+	 *                done, even if it has been finished early before the last question
+	 * @param seed    the seed determining the order of answers, the preview and the tie-break
+	 * @param answers the selected answer per question, {@literal -1} for questions not answered yet or if unknown;
+	 *                {@literal null} if the answers are not known at all
+	 */
+	public record State(int idx, int[] counts, int outcome, int seed, int[] answers) implements Serializable {
+
+		/**
+		 * Creates a snapshot of a quiz that has been taken before quizzes had a seed.
+		 *
+		 * @param idx     the 0-based index of the next question to be answered
+		 * @param counts  the counts per outcome, in the order of the outcomes of the definition
+		 * @param outcome the index of the chosen outcome or {@literal -1} if there is none yet
+		 */
+		public State(int idx, int[] counts, int outcome) {
+			this(idx, counts, outcome, 0);
+		}
+
+		/**
+		 * Creates a snapshot of a quiz whose answers are not known.
+		 *
+		 * @param idx     the 0-based index of the next question to be answered
+		 * @param counts  the counts per outcome, in the order of the outcomes of the definition
+		 * @param outcome the index of the chosen outcome or {@literal -1} if there is none yet
+		 * @param seed    the seed determining the order of answers, the preview and the tie-break
+		 */
+		public State(int idx, int[] counts, int outcome, int seed) {
+			this(idx, counts, outcome, seed, null);
+		}
+	}
+
 	@Serial
-	private static final long serialVersionUID = -7361338223494472755L;
+	private static final long serialVersionUID = 2183207937001465106L;
 
-	private final Definition definition;
+	private final CompiledDefinition compiledDefinition;
 	private final List<Question> questions;
 
-	private int idx = 0;
+	/**
+	 * The progress as an immutable snapshot, the arrays of a published snapshot are never modified. All transitions
+	 * replace the snapshot atomically, so that concurrent answers to the same question are only counted once.
+	 */
+	private final AtomicReference<State> state;
 
-	private final Map<Outcome, Integer> counts = new LinkedHashMap<>();
+	public Quiz(Definition definition) {
+		this(CompiledDefinition.of(definition));
+	}
 
-	private Outcome outcome;
+	public Quiz(CompiledDefinition compiledDefinition) {
+		this.compiledDefinition = compiledDefinition;
+		this.questions = compiledDefinition.definition().questions();
+		this.state = new AtomicReference<>(initialState(compiledDefinition));
+	}
 
-	public Quiz(Definition definition) {
-		this.definition = definition;
-		this.questions = definition.questions();
+	/**
+	 * Restores a quiz from a previously taken {@link #getState() snapshot}.
+	 *
+	 * @param definition the definition the state belongs to
+	 * @param state      the state to restore
+	 * @throws IllegalArgumentException if the state does not fit the definition
+	 */
+	public Quiz(Definition definition, State state) {
+		this(CompiledDefinition.of(definition), state);
+	}
+
+	/**
+	 * Restores a quiz from a previously taken {@link #getState() snapshot}.
+	 *
+	 * @param compiledDefinition the definition the state belongs to
+	 * @param state              the state to restore
+	 * @throws IllegalArgumentException if the state does not fit the definition
+	 */
+	public Quiz(CompiledDefinition compiledDefinition, State state) {
+		this.compiledDefinition = compiledDefinition;
+		this.questions = compiledDefinition.definition().questions();
+
+		if (state.idx() < 0 || state.idx() > this.questions.size()) {
+			throw new IllegalArgumentException("Invalid question index (%d)".formatted(state.idx()));
+		}
+		if (state.counts().length != compiledDefinition.numberOfOutcomes()) {
+			throw new IllegalArgumentException("Invalid number of counts.");
+		}
+		if (state.outcome() < -1 || state.outcome() >= compiledDefinition.numberOfOutcomes()) {
+			throw new IllegalArgumentException("Invalid outcome (%d)".formatted(state.outcome()));
+		}
+		int[] answers;
+		if (state.answers() == null) {
+			answers = new int[this.questions.size()];
+			Arrays.fill(answers, -1);
+		} else if (state.answers().length != this.questions.size()) {
+			throw new IllegalArgumentException("Invalid number of answers.");
+		} else {
+			answers = state.answers().clone();
+			for (int i = 0; i < answers.length; i++) {
+				if (answers[i] < -1 || answers[i] >= compiledDefinition.numberOfAnswers(i)) {
+					throw new IllegalArgumentException(
+						"Invalid answer (%d) to question %d".formatted(answers[i], i + 1));
+				}
+			}
+		}
+
+		this.state = new AtomicReference<>(
+			new State(state.idx(), state.counts().clone(), state.outcome(), state.seed(), answers));
+	}
+
+	private static State initialState(CompiledDefinition compiledDefinition) {
+		var answers = new int[compiledDefinition.numberOfQuestions()];
+		Arrays.fill(answers, -1);
+		return new State(0, new int[compiledDefinition.numberOfOutcomes()], -1, ThreadLocalRandom.current().nextInt(),
+			answers);
 	}
 
 	public boolean isDone() {
-		return this.idx >= questions.size();
+		return isDone(this.state.get());
+	}
+
+	private boolean isDone(State progress) {
+		return progress.idx() >= questions.size() || progress.outcome() >= 0;
 	}
 
 	public Optional<CurrentQuestion> getCurrentQuestion() {
 
-		if (isDone()) {
+		var current = this.state.get();
+		if (isDone(current)) {
 			return Optional.empty();
 		}
 
-		synchronized (this) {
-			return Optional.of(
-				new CurrentQuestion(questions.get(this.idx), this.idx + 1, this.idx == this.questions.size() - 1));
-		}
+		return Optional.of(new CurrentQuestion(questions.get(current.idx()), current.idx() + 1,
+			current.idx() == this.questions.size() - 1, compiledDefinition.permutation(current.idx(), current.seed())));
 	}
 
+	/**
+	 * {@return the name of the outcome shown as preview, stable for the lifetime of this quiz}
+	 */
 	public String getRandomName() {
-		var numOutcomes = definition.outcomes().size();
-		return definition.outcomes().get(ThreadLocalRandom.current().nextInt(0, numOutcomes)).name();
+		return compiledDefinition.preview(this.state.get().seed()).name();
 	}
 
+	/**
+	 * Scores the answer to the current question.
+	 *
+	 * @param selectedAnswer the 0-based index of the selected answer
+	 * @return {@literal true} if the quiz is done
+	 * @throws IllegalArgumentException if the current question has no such answer
+	 */
 	public boolean evaluate(Integer selectedAnswer) {
 
-		if (isDone()) {
-			return true;
-		}
+		Objects.requireNonNull(selectedAnswer);
+		answer(-1, selectedAnswer);
+		return isDone();
+	}
+
+	/**
+	 * Scores the answer to the given question, if that question is the current one. Answers to questions that have
+	 * already been answered, i.e. submitted twice or from an outdated page, are ignored, as are answers to questions
+	 * that have not been reached yet. The outcome is selected together with the answer to the last question.
+	 *
+	 * @param question       the 0-based index of the question or {@literal -1} for whichever question is current
+	 * @param selectedAnswer the 0-based index of the selected answer
+	 * @return the state after scoring the answer, shared with this quiz and therefore not to be modified, or
+	 * {@literal null} if the answer has been ignored
+	 * @throws IllegalArgumentException if the question has no such answer
+	 */
+	State answer(int question, int selectedAnswer) {
+		return answer(question, selectedAnswer, false);
+	}
 
-		var selectedQuestions = questions.get(this.idx);
-		var answers = selectedQuestions.answers();
+	/**
+	 * Scores the answer to the given question like {@link #answer(int, int)}, optionally finishing the quiz early: When
+	 * the outcome is {@link CompiledDefinition#decidedOutcome(int, int[]) decided} before the last question, it is
+	 * selected right away and the quiz is done. The outcome is the same as if the remaining questions were answered.
+	 *
+	 * @param question       the 0-based index of the question or {@literal -1} for whichever question is current
+	 * @param selectedAnswer the 0-based index of the selected answer
+	 * @param finishEarly    whether to finish the quiz as soon as the outcome is decided
+	 * @return the state after scoring the answer, shared with this quiz and therefore not to be modified, or
+	 * {@literal null} if the answer has been ignored
+	 * @throws IllegalArgumentException if the question has no such answer
+	 */
+	State answer(int question, int selectedAnswer, boolean finishEarly) {
 
-		Objects.requireNonNull(selectedAnswer);
-		if (selectedAnswer < 0 || selectedAnswer >= answers.size()) {
-			throw new IllegalArgumentException("Illegal answer (%d)".formatted(selectedAnswer));
-		}
-
-		synchronized (this) {
-			var increments = answers.get(selectedAnswer).increments();
-			if (increments.size() != answers.size()) {
-				var key = this.definition.outcomes.get(selectedAnswer);
-				var value = this.counts.getOrDefault(key, 0);
-				this.counts.put(key, value + 1);
-			} else {
-				for (int i = 0; i < increments.size(); i++) {
-					var increment = increments.get(i);
-					var key = this.definition.outcomes.get(i);
-					var value = this.counts.getOrDefault(key, 0);
-					this.counts.put(key, value + increment);
-				}
+		while (true) {
+			var current = this.state.get();
+			var idx = current.idx();
+			if (isDone(current) || question >= 0 && question != idx) {
+				return null;
+			}
+			if (selectedAnswer < 0 || selectedAnswer >= compiledDefinition.numberOfAnswers(idx)) {
+				throw new IllegalArgumentException("Illegal answer (%d)".formatted(selectedAnswer));
 			}
 
-			++this.idx;
+			var counts = current.counts().clone();
+			compiledDefinition.score(idx, selectedAnswer, counts);
+			var answers = current.answers().clone();
+			answers[idx] = selectedAnswer;
+			var outcome = -1;
+			if (idx + 1 == questions.size()) {
+				outcome = CompiledDefinition.selectOutcome(counts, current.seed());
+			} else if (finishEarly) {
+				outcome = compiledDefinition.decidedOutcome(idx + 1, counts);
+			}
+			var next = new State(idx + 1, counts, outcome, current.seed(), answers);
+			if (this.state.compareAndSet(current, next)) {
+				return next;
+			}
 		}
-		return isDone();
 	}
 
-	// We do check this by checking if there's something in the answer list
-	@SuppressWarnings("OptionalGetWithoutIsPresent")
 	public Optional<Outcome> getResult() {
 
-		if (this.questions.isEmpty() || !this.isDone()) {
-			return Optional.empty();
-		}
+		var selected = getOutcome();
+		return selected < 0 ? Optional.empty() : compiledDefinition.result(selected);
+	}
 
-		if (this.outcome == null) {
-			synchronized (this) {
-				// Cache this so that a possible randomization of a non-unique answer is stable
-				this.outcome = this.counts.entrySet().stream().max(Map.Entry.comparingByValue())
-					.map(maxEntry -> {
-						var allEntriesWithValue = counts.entrySet().stream()
-							.filter(e -> e.getValue().equals(maxEntry.getValue()))
-							.toList();
-
-						if (allEntriesWithValue.size() == 1) {
-							return maxEntry;
-						} else {
-							var index = ThreadLocalRandom.current().nextInt(0, allEntriesWithValue.size());
-							return allEntriesWithValue.get(index);
-						}
-					})
-					.map(Map.Entry::getKey)
-					.get();
-			}
+	/**
+	 * Selects the outcome once all questions have been answered.
+	 *
+	 * @return the index of the selected outcome or {@literal -1} if the quiz is not done or has no outcomes
+	 */
+	int getOutcome() {
+
+		var current = this.state.get();
+		if (this.questions.isEmpty() || !isDone(current)) {
+			return -1;
 		}
+		// Restored states may lack the outcome, selecting it from the seed gives the same result each time
+		return current.outcome() >= 0 ? current.outcome()
+			: CompiledDefinition.selectOutcome(current.counts(), current.seed());
+	}
 
-		return Optional.of(this.outcome);
+	/**
+	 * {@return a snapshot of the current progress}
+	 */
+	public State getState() {
+		var current = this.state.get();
+		return new State(current.idx(), current.counts().clone(), current.outcome(), current.seed(),
+			current.answers().clone());
 	}
 
-	public synchronized void reset() {
-		this.idx = 0;
-		this.counts.clear();
-		this.outcome = null;
+	/**
+	 * {@return the definition this quiz has been started with}
+	 */
+	CompiledDefinition getCompiledDefinition() {
+		return compiledDefinition;
+	}
+
+	/**
+	 * Starts the quiz over, with a new seed and therefore new orders of the answers.
+	 */
+	public void reset() {
+		this.state.set(initialState(compiledDefinition));
 	}
 }
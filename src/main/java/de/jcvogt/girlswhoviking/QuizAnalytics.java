@@ -0,0 +1,222 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import de.jcvogt.girlswhoviking.SlidingCounter.Window;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Live distribution of the chosen answers and the outcomes handed out, per quiz and version of its definition.
+ * Counters for a definition are created when the definition is used for the first time, afterwards recording is
+ * lock-free and allocation-free (see {@link SlidingCounter}): The counters are looked up by the id of the quiz and the
+ * version of its definition, both strings that are already at hand, without creating a composite key. Definitions are
+ * identified by quiz and version, so a definition that is compiled again, for example after being evicted from the
+ * {@link QuizCatalog}, keeps counting where it left off. Statistics are kept for a bounded number of definitions, the
+ * ones used first are dropped first.
+ *
+ * @author Michael J. Simons
+ */
+final class QuizAnalytics {
+
+	/**
+	 * Counts of a single answer or outcome.
+	 *
+	 * @param value      the answer or the name of the outcome
+	 * @param total      the number of times it has been chosen
+	 * @param lastMinute the number of times it has been chosen during the last minute
+	 * @param lastHour   the number of times it has been chosen during the last hour
+	 * @param lastDay    the number of times it has been chosen during the last day
+	 */
+	@RegisterForReflection
+	record Count(String value, long total, long lastMinute, long lastHour, long lastDay) {
+	}
+
+	/**
+	 * The answers chosen for a question.
+	 *
+	 * @param question the question
+	 * @param answers  the counts per answer
+	 */
+	@RegisterForReflection
+	record QuestionStatistics(String question, List<Count> answers) {
+	}
+
+	/**
+	 * Statistics for one version of a quiz.
+	 *
+	 * @param quiz      the id of the quiz, empty for the default quiz
+	 * @param version   the version of the definition
+	 * @param questions the answers chosen per question
+	 * @param outcomes  the outcomes handed out
+	 */
+	@RegisterForReflection
+	record QuizStatistics(String quiz, String version, List<QuestionStatistics> questions, List<Count> outcomes) {
+	}
+
+	private static final class Counters {
+
+		final long sequence;
+
+		final String quizId;
+
+		final CompiledDefinition definition;
+
+		final SlidingCounter[][] answers;
+
+		final SlidingCounter[] outcomes;
+
+		Counters(long sequence, String quizId, CompiledDefinition definition, LongSupplier ticker) {
+			this.sequence = sequence;
+			this.quizId = quizId;
+			this.definition = definition;
+			this.answers = new SlidingCounter[definition.numberOfQuestions()][];
+			for (int i = 0; i < answers.length; i++) {
+				answers[i] = new SlidingCounter[definition.numberOfAnswers(i)];
+				for (int j = 0; j < answers[i].length; j++) {
+					answers[i][j] = new SlidingCounter(ticker);
+				}
+			}
+			this.outcomes = new SlidingCounter[definition.numberOfOutcomes()];
+			for (int i = 0; i < outcomes.length; i++) {
+				outcomes[i] = new SlidingCounter(ticker);
+			}
+		}
+	}
+
+	private final int maxDefinitions;
+
+	private final LongSupplier ticker;
+
+	/**
+	 * Counters per quiz and version of its definition, read without locking and only modified while holding the lock on
+	 * this map.
+	 */
+	private final Map<String, Map<String, Counters>> counters = new ConcurrentHashMap<>();
+
+	private long sequence;
+
+	QuizAnalytics(int maxDefinitions) {
+		this(maxDefinitions, System::nanoTime);
+	}
+
+	QuizAnalytics(int maxDefinitions, LongSupplier ticker) {
+		if (maxDefinitions < 1) {
+			throw new IllegalArgumentException("Statistics for at least one definition must be kept.");
+		}
+		this.maxDefinitions = maxDefinitions;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Records an answer.
+	 *
+	 * @param quizId     the id of the quiz
+	 * @param definition the definition of the quiz
+	 * @param question   the 0-based index of the question
+	 * @param answer     the 0-based index of the answer
+	 */
+	void answered(String quizId, CompiledDefinition definition, int question, int answer) {
+		countersFor(quizId, definition).answers[question][answer].increment();
+	}
+
+	/**
+	 * Records a finished quiz.
+	 *
+	 * @param quizId     the id of the quiz
+	 * @param definition the definition of the quiz
+	 * @param outcome    the 0-based index of the outcome
+	 */
+	void finished(String quizId, CompiledDefinition definition, int outcome) {
+		countersFor(quizId, definition).outcomes[outcome].increment();
+	}
+
+	/**
+	 * {@return a snapshot of all statistics, ordered by quiz and starting with the most recent version of each quiz}
+	 */
+	List<QuizStatistics> snapshot() {
+
+		var result = new ArrayList<QuizStatistics>();
+		counters.values().stream()
+			.flatMap(versions -> versions.values().stream())
+			.sorted(Comparator.<Counters, String>comparing(c -> c.quizId)
+				.thenComparing(Comparator.<Counters>comparingLong(c -> c.sequence).reversed()))
+			.forEach(c -> {
+				var definition = c.definition.definition();
+				var questions = new ArrayList<QuestionStatistics>(c.answers.length);
+				for (int i = 0; i < c.answers.length; i++) {
+					var question = definition.questions().get(i);
+					var answers = new ArrayList<Count>(c.answers[i].length);
+					for (int j = 0; j < c.answers[i].length; j++) {
+						answers.add(count(question.answers().get(j).value(), c.answers[i][j]));
+					}
+					questions.add(new QuestionStatistics(question.value(), answers));
+				}
+				var outcomes = new ArrayList<Count>(c.outcomes.length);
+				for (int i = 0; i < c.outcomes.length; i++) {
+					outcomes.add(count(definition.outcomes().get(i).name(), c.outcomes[i]));
+				}
+				result.add(new QuizStatistics(c.quizId, c.definition.version(), questions, outcomes));
+			});
+		return result;
+	}
+
+	private Counters countersFor(String quizId, CompiledDefinition definition) {
+
+		var versions = counters.get(quizId);
+		var result = versions == null ? null : versions.get(definition.version());
+		return result != null ? result : createCounters(quizId, definition);
+	}
+
+	private Counters createCounters(String quizId, CompiledDefinition definition) {
+
+		synchronized (counters) {
+			var versions = counters.computeIfAbsent(quizId, k -> new ConcurrentHashMap<>());
+			var result = versions.get(definition.version());
+			if (result != null) {
+				return result;
+			}
+			result = new Counters(sequence++, quizId, definition, ticker);
+			versions.put(definition.version(), result);
+			while (counters.values().stream().mapToInt(Map::size).sum() > maxDefinitions) {
+				counters.values().stream()
+					.flatMap(v -> v.values().stream())
+					.min(Comparator.comparingLong(c -> c.sequence))
+					.ifPresent(this::remove);
+			}
+			return result;
+		}
+	}
+
+	private void remove(Counters eldest) {
+		var versions = counters.get(eldest.quizId);
+		versions.remove(eldest.definition.version());
+		if (versions.isEmpty()) {
+			counters.remove(eldest.quizId);
+		}
+	}
+
+	private static Count count(String value, SlidingCounter counter) {
+		return new Count(value, counter.total(), counter.sum(Window.MINUTE), counter.sum(Window.HOUR),
+			counter.sum(Window.DAY));
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+import org.jboss.logging.Logger;
+
+/**
+ * The quizzes hosted in addition to the default quiz. Each quiz is defined by a file named after its id in a
+ * directory, either precompiled ({@code <id>.bin}, see {@link DefinitionCodec}) or as JSON ({@code <id>.json}). A
+ * precompiled definition is only used if there is no JSON or it has been compiled from that JSON.
+ * Definitions are loaded on first use on the given executor, so that the I/O thread is never blocked, and kept in a
+ * size-bounded cache in order of access, so that memory scales with the quizzes actually in use and not with the
+ * size of the catalogue. An evicted quiz is read again on its next use. Ids without a definition are not cached, so
+ * that requests for arbitrary ids cannot push the quizzes in use out of the cache.
+ *
+ * @author Michael J. Simons
+ */
+final class QuizCatalog {
+
+	private static final Logger LOGGER = Logger.getLogger(QuizCatalog.class);
+
+	private static final Pattern VALID_ID = Pattern.compile("[a-z0-9][a-z0-9-]{0,63}");
+
+	private final Optional<Path> directory;
+
+	private final int maxCached;
+
+	private final Executor executor;
+
+	private final Map<String, CompletableFuture<Optional<Definitions>>> cache;
+
+	/**
+	 * Loads in flight, guarded by {@link #cache}. Kept apart from the cache, so that an id enters the cache only once
+	 * its definition has been loaded successfully.
+	 */
+	private final Map<String, CompletableFuture<Optional<Definitions>>> pending = new HashMap<>();
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter loaded;
+
+	private final Counter failed;
+
+	private final Counter evicted;
+
+	private final Timer loading;
+
+	QuizCatalog(Optional<Path> directory, int maxCached, Executor executor, MeterRegistry registry) {
+
+		if (maxCached < 1) {
+			throw new IllegalArgumentException("At least one quiz must be cached.");
+		}
+		this.directory = directory;
+		this.maxCached = maxCached;
+		this.executor = executor;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Optional<Definitions>>> eldest) {
+				var remove = size() > QuizCatalog.this.maxCached;
+				if (remove) {
+					evicted.increment();
+				}
+				return remove;
+			}
+		};
+
+		Gauge.builder("quiz.definitions.cached", this, QuizCatalog::size)
+			.description("Number of hosted quiz definitions currently cached")
+			.register(registry);
+		this.hits = Counter.builder("quiz.definitions.requests")
+			.description("Number of lookups of hosted quiz definitions")
+			.tag("result", "hit")
+			.register(registry);
+		this.misses = Counter.builder("quiz.definitions.requests")
+			.description("Number of lookups of hosted quiz definitions")
+			.tag("result", "miss")
+			.register(registry);
+		this.loaded = Counter.builder("quiz.definitions.loads")
+			.description("Number of hosted quiz definitions loaded")
+			.tag("result", "success")
+			.register(registry);
+		this.failed = Counter.builder("quiz.definitions.loads")
+			.description("Number of hosted quiz definitions loaded")
+			.tag("result", "failure")
+			.register(registry);
+		this.evicted = Counter.builder("quiz.definitions.evicted")
+			.description("Number of hosted quiz definitions evicted from the cache")
+			.register(registry);
+		this.loading = Metrics.timer(registry, "quiz.definitions.load", "Time spent loading a quiz definition",
+			"source", "catalog");
+	}
+
+	/**
+	 * Looks up the definitions of a hosted quiz. The returned stage is already completed when the quiz is cached.
+	 * Concurrent lookups of a quiz that is not cached share the same load.
+	 *
+	 * @param id the id of the quiz
+	 * @return a stage completing with the definitions or with an empty optional if there is no such quiz
+	 */
+	CompletionStage<Optional<Definitions>> get(String id) {
+
+		if (directory.isEmpty() || !VALID_ID.matcher(id).matches()) {
+			return CompletableFuture.completedFuture(Optional.empty());
+		}
+
+		CompletableFuture<Optional<Definitions>> definitions;
+		synchronized (cache) {
+			definitions = cache.get(id);
+			if (definitions == null) {
+				definitions = pending.get(id);
+			}
+			if (definitions != null) {
+				hits.increment();
+				return definitions;
+			}
+			misses.increment();
+			definitions = new CompletableFuture<>();
+			pending.put(id, definitions);
+		}
+
+		var result = definitions;
+		executor.execute(() -> {
+			var loadedDefinitions = loading.record(() -> load(id));
+			synchronized (cache) {
+				pending.remove(id, result);
+				if (loadedDefinitions.isPresent()) {
+					cache.put(id, result);
+				}
+			}
+			result.complete(loadedDefinitions);
+		});
+		return result;
+	}
+
+	/**
+	 * {@return the number of quizzes currently cached}
+	 */
+	int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	private Optional<Definitions> load(String id) {
+
+		try {
+			var definition = read(directory.orElseThrow(), id);
+			if (definition.isEmpty()) {
+				return Optional.empty();
+			}
+			var compiledDefinition = CompiledDefinition.of(definition.get()).validate();
+			loaded.increment();
+			LOGGER.infof("Loaded version %s of quiz %s.", compiledDefinition.version(), id);
+			return Optional.of(new Definitions(id, compiledDefinition));
+		} catch (RuntimeException e) {
+			failed.increment();
+			LOGGER.errorf(e, "Could not load quiz %s.", id);
+			return Optional.empty();
+		}
+	}
+
+	private static Optional<Quiz.Definition> read(Path directory, String id) {
+
+		var binary = directory.resolve(id + DefinitionCodec.EXTENSION);
+		var json = directory.resolve(id + ".json");
+		try {
+			var source = Files.isRegularFile(json) ? Files.readAllBytes(json) : null;
+			if (Files.isRegularFile(binary)) {
+				var compiled = Files.readAllBytes(binary);
+				if (source == null || DefinitionCodec.isCompiledFrom(compiled, source)) {
+					return Optional.of(DefinitionCodec.decode(compiled));
+				}
+				LOGGER.infof("Precompiled definition of quiz %s is out of date, parsing JSON.", id);
+			}
+			return source == null ? Optional.empty() : Optional.of(QuizService.readDefinition(json));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
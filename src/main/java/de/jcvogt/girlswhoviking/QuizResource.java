@@ -15,72 +15,352 @@
  */
 package de.jcvogt.girlswhoviking;
 
+import de.jcvogt.girlswhoviking.ServerTiming.Phase;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.qute.Template;
-import io.quarkus.qute.TemplateInstance;
+import io.smallrye.common.annotation.NonBlocking;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
 
 import java.net.URI;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 /**
+ * All endpoints only change the in-memory state of a quiz and render a template, so they run directly on the I/O
+ * thread without being dispatched to a worker.
+ * <p>
+ * The answer form contains the (1-based) number of the question being answered. An answer is only scored if that
+ * question is still the current one, so submitting a form twice or from an outdated page doesn't count twice.
+ * Answers without the number are scored for the current question, answers the question doesn't have are rejected with
+ * {@literal 400 Bad Request}. Optionally, a quiz is finished as soon as its outcome can't change anymore, see
+ * {@link Quiz#answer(int, int, boolean)}.
+ * <p>
+ * The default quiz is served from the root, hosted quizzes below {@literal /quiz/<id>/}. Their definitions are looked
+ * up in the {@link QuizCatalog}, only the first request to a quiz that is not cached continues on a worker thread.
+ * <p>
+ * Answers and resets go through the {@link AdmissionControl admission control} first, requests that exceed the rate
+ * of the client are answered with {@literal 429 Too Many Requests} right away.
+ * <p>
+ * Each endpoint is timed as {@literal quiz.requests}, tagged with the endpoint and whether the default or a hosted
+ * quiz has been requested. Quarkus' own {@literal http.server.requests} can't be used for that, it tags all redirects
+ * with the same uri. Scoring, selecting the outcome and rendering the quiz are timed as well. A breakdown of each
+ * request into phases can be added to the responses, see {@link ServerTiming}.
+ * <p>
+ * Besides the result of the current user, each outcome has a page of its own below {@literal results/<name>} that
+ * doesn't depend on a quiz being taken and can be shared.
+ *
  * @author Michael J. Simons
  */
 @Path("/")
+@NonBlocking
 public class QuizResource {
 
 	private final Template quizTemplate;
-	private final Template resultTemplate;
-	private final Quiz currentQuiz;
+	private final PageCache pageCache;
+	private final QuizStore quizStore;
+	private final QuizService quizService;
+	private final QuizCatalog quizCatalog;
+	private final QuizAnalytics quizAnalytics;
+	private final ResultLog resultLog;
+	private final AdmissionControl admissionControl;
+	private final Timer evaluateTimer;
+	private final Timer resultTimer;
+	private final Timer renderTimer;
+	private final boolean serverTiming;
+	private final boolean finishEarly;
 
-	public QuizResource(Template quiz, Template result, Quiz currentQuiz) {
+	public QuizResource(Template quiz, PageCache pageCache, QuizStore quizStore, QuizService quizService,
+		QuizCatalog quizCatalog, QuizAnalytics quizAnalytics, ResultLog resultLog, AdmissionControl admissionControl,
+		MeterRegistry meterRegistry,
+		@ConfigProperty(name = "girlswhoviking.server-timing.enabled", defaultValue = "false") boolean serverTiming,
+		@ConfigProperty(name = "girlswhoviking.finish-early.enabled", defaultValue = "false") boolean finishEarly) {
 
 		this.quizTemplate = Objects.requireNonNull(quiz, "The quiz template is required.");
-		this.resultTemplate = Objects.requireNonNull(result, "The result template is required.");
-		this.currentQuiz = currentQuiz;
+		this.pageCache = pageCache;
+		this.quizStore = quizStore;
+		this.quizService = quizService;
+		this.quizCatalog = quizCatalog;
+		this.quizAnalytics = quizAnalytics;
+		this.resultLog = resultLog;
+		this.admissionControl = admissionControl;
+		this.evaluateTimer = Metrics.timer(meterRegistry, "quiz.evaluate", "Time spent scoring an answer");
+		this.resultTimer = Metrics.timer(meterRegistry, "quiz.result", "Time spent selecting the outcome of a quiz");
+		this.renderTimer = Metrics.timer(meterRegistry, "quiz.template.render", "Time spent rendering a template",
+			"template", "quiz");
+		this.serverTiming = serverTiming;
+		this.finishEarly = finishEarly;
 	}
 
 	@Path("start")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "start", "quiz", "default"}, histogram = true)
 	@GET
 	@Produces(MediaType.TEXT_HTML)
-	public TemplateInstance get(@Context UriInfo uriInfo) {
-		if (currentQuiz.isDone()) {
-			currentQuiz.reset();
-		}
-		return quizTemplate
-			.data("quiz", currentQuiz)
-			.data("twitter_image", uriInfo.resolve(URI.create("/img/banner_w_1500.png")));
+	public Response get(@Context UriInfo uriInfo, @Context HttpHeaders headers) {
+		return start(quizService.getDefinitions(), "/", uriInfo, headers);
 	}
 
 	@Path("answer")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "answer", "quiz", "default"}, histogram = true)
 	@POST
-	public Response next(@FormParam(value = "selectedAnswer") Integer selectedAnswer) {
-		var location = URI.create(selectedAnswer != null && currentQuiz.evaluate(selectedAnswer) ? "result" : "start");
-		return Response.seeOther(location).build();
+	public Response next(@FormParam(value = "question") Integer question,
+		@FormParam(value = "selectedAnswer") Integer selectedAnswer, @Context HttpHeaders headers,
+		@Context HttpServerRequest httpRequest) {
+		return admitted(httpRequest,
+			() -> answer(quizService.getDefinitions(), "/", question, selectedAnswer, headers));
 	}
 
 	@Path("reset")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "reset", "quiz", "default"}, histogram = true)
 	@POST
-	public Response reset() {
-		currentQuiz.reset();
-		return Response.seeOther(URI.create("start")).build();
+	public Response reset(@Context HttpHeaders headers, @Context HttpServerRequest httpRequest) {
+		return admitted(httpRequest, () -> reset(quizService.getDefinitions(), "/", headers));
 	}
 
 	@Path("result")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "result", "quiz", "default"}, histogram = true)
+	@GET
+	public Response result(@Context Request request, @Context HttpHeaders headers) {
+		return result(quizService.getDefinitions(), "/", request, headers);
+	}
+
+	@Path("results/{outcome}")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "shared-result", "quiz", "default"}, histogram = true)
 	@GET
-	public Response result() {
+	public Response sharedResult(@PathParam("outcome") String outcome, @Context Request request,
+		@Context HttpHeaders headers) {
+		return sharedResult(quizService.getDefinitions(), "/", outcome, request, headers);
+	}
+
+	@Path("quiz/{quizId}/start")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "start", "quiz", "hosted"}, histogram = true)
+	@GET
+	@Produces(MediaType.TEXT_HTML)
+	public CompletionStage<Response> get(@PathParam("quizId") String quizId, @Context UriInfo uriInfo,
+		@Context HttpHeaders headers) {
+		return hosted(quizId, (definitions, basePath) -> start(definitions, basePath, uriInfo, headers));
+	}
+
+	@Path("quiz/{quizId}/answer")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "answer", "quiz", "hosted"}, histogram = true)
+	@POST
+	public CompletionStage<Response> next(@PathParam("quizId") String quizId,
+		@FormParam(value = "question") Integer question, @FormParam(value = "selectedAnswer") Integer selectedAnswer,
+		@Context HttpHeaders headers, @Context HttpServerRequest httpRequest) {
+		return admittedAsync(httpRequest, () -> hosted(quizId,
+			(definitions, basePath) -> answer(definitions, basePath, question, selectedAnswer, headers)));
+	}
+
+	@Path("quiz/{quizId}/reset")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "reset", "quiz", "hosted"}, histogram = true)
+	@POST
+	public CompletionStage<Response> reset(@PathParam("quizId") String quizId, @Context HttpHeaders headers,
+		@Context HttpServerRequest httpRequest) {
+		return admittedAsync(httpRequest,
+			() -> hosted(quizId, (definitions, basePath) -> reset(definitions, basePath, headers)));
+	}
+
+	@Path("quiz/{quizId}/result")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "result", "quiz", "hosted"}, histogram = true)
+	@GET
+	public CompletionStage<Response> result(@PathParam("quizId") String quizId, @Context Request request,
+		@Context HttpHeaders headers) {
+		return hosted(quizId, (definitions, basePath) -> result(definitions, basePath, request, headers));
+	}
+
+	@Path("quiz/{quizId}/results/{outcome}")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "shared-result", "quiz", "hosted"}, histogram = true)
+	@GET
+	public CompletionStage<Response> sharedResult(@PathParam("quizId") String quizId,
+		@PathParam("outcome") String outcome, @Context Request request, @Context HttpHeaders headers) {
+		return hosted(quizId,
+			(definitions, basePath) -> sharedResult(definitions, basePath, outcome, request, headers));
+	}
+
+	private CompletionStage<Response> hosted(String quizId, BiFunction<Definitions, String, Response> handler) {
+		return onRequestContext(quizCatalog.get(quizId)).thenApply(definitions -> definitions
+			.map(d -> handler.apply(d, "/quiz/" + quizId + "/"))
+			.orElseGet(() -> Response.status(Response.Status.NOT_FOUND).build()));
+	}
+
+	/**
+	 * Continues with the given stage on the Vert.x context of the current request. Definitions that are not cached are
+	 * loaded on a worker thread, on which the request scope of the request is not active.
+	 *
+	 * @param stage the stage to continue with
+	 * @param <T>   the type of the result
+	 * @return a stage completing on the context of the current request
+	 */
+	static <T> CompletionStage<T> onRequestContext(CompletionStage<T> stage) {
+		var context = Vertx.currentContext();
+		if (context == null || stage.toCompletableFuture().isDone()) {
+			return stage;
+		}
+		var result = new CompletableFuture<T>();
+		stage.whenComplete((value, e) -> context.runOnContext(v -> {
+			if (e != null) {
+				result.completeExceptionally(e);
+			} else {
+				result.complete(value);
+			}
+		}));
+		return result;
+	}
+
+	private Response admitted(HttpServerRequest httpRequest, Supplier<Response> handler) {
+		return admissionControl.admit(clientAddress(httpRequest))
+			? handler.get()
+			: tooManyRequests(admissionControl.retryAfterSeconds());
+	}
+
+	private CompletionStage<Response> admittedAsync(HttpServerRequest httpRequest,
+		Supplier<CompletionStage<Response>> handler) {
+		return admissionControl.admit(clientAddress(httpRequest))
+			? handler.get()
+			: CompletableFuture.completedFuture(tooManyRequests(admissionControl.retryAfterSeconds()));
+	}
 
-		return currentQuiz.getResult()
-			.map(r -> Response.ok(resultTemplate.instance().data("result", r)))
-			.orElseGet(() -> Response.seeOther(URI.create("start")))
+	/**
+	 * {@return a response telling the client to slow down}
+	 *
+	 * @param retryAfterSeconds the number of seconds after which the client may try again
+	 */
+	static Response tooManyRequests(long retryAfterSeconds) {
+		return Response.status(Response.Status.TOO_MANY_REQUESTS)
+			.header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+			.header(HttpHeaders.CACHE_CONTROL, PageCache.NO_STORE)
 			.build();
 	}
+
+	/**
+	 * {@return the address of the client, which is the forwarded one when proxy address forwarding is enabled}
+	 */
+	static String clientAddress(HttpServerRequest httpRequest) {
+		var address = httpRequest.remoteAddress();
+		return address == null || address.hostAddress() == null ? "" : address.hostAddress();
+	}
+
+	private Response start(Definitions definitions, String basePath, UriInfo uriInfo, HttpHeaders headers) {
+		var timing = ServerTiming.start(serverTiming, "start");
+		var currentQuiz = quizStore.load(definitions, headers);
+		timing.mark(Phase.SESSION);
+		if (currentQuiz.isDone()) {
+			currentQuiz = quizStore.restart(definitions, currentQuiz, headers);
+			timing.mark(Phase.QUIZ);
+		}
+		var start = System.nanoTime();
+		var page = quizTemplate
+			.data("quiz", currentQuiz)
+			.data("base", basePath)
+			.data("twitter_image", uriInfo.resolve(URI.create("/img/banner_w_1500.png")))
+			.render();
+		renderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		timing.mark(Phase.RENDER);
+		var response = quizStore.save(definitions, currentQuiz, Response.ok(page)
+			.header(HttpHeaders.CACHE_CONTROL, PageCache.NO_STORE));
+		timing.mark(Phase.SESSION);
+		return timing.addTo(response).build();
+	}
+
+	private Response answer(Definitions definitions, String basePath, Integer question, Integer selectedAnswer,
+		HttpHeaders headers) {
+		var timing = ServerTiming.start(serverTiming, "answer");
+		var currentQuiz = quizStore.load(definitions, headers);
+		timing.mark(Phase.SESSION);
+		Response.ResponseBuilder response;
+		try {
+			if (selectedAnswer != null && (question == null || question > 0)) {
+				evaluate(definitions, currentQuiz, question == null ? -1 : question - 1, selectedAnswer);
+			}
+			var location = URI.create(basePath + (selectedAnswer != null && currentQuiz.isDone() ? "result" : "start"));
+			response = Response.seeOther(location);
+		} catch (IllegalArgumentException e) {
+			response = Response.status(Response.Status.BAD_REQUEST)
+				.header(HttpHeaders.CACHE_CONTROL, PageCache.NO_STORE);
+		}
+		timing.mark(Phase.QUIZ);
+		// Saved in any case, so that a quiz created by this request isn't left pending in the store
+		response = quizStore.save(definitions, currentQuiz, response);
+		timing.mark(Phase.SESSION);
+		return timing.addTo(response).build();
+	}
+
+	private void evaluate(Definitions definitions, Quiz quiz, int question, int selectedAnswer) {
+
+		var start = System.nanoTime();
+		var state = quiz.answer(question, selectedAnswer, finishEarly);
+		evaluateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		if (state == null) {
+			return;
+		}
+		var definition = quiz.getCompiledDefinition();
+		quizAnalytics.answered(definitions.id(), definition, state.idx() - 1, selectedAnswer);
+		if (state.outcome() >= 0) {
+			quizAnalytics.finished(definitions.id(), definition, state.outcome());
+			resultLog.append(new ResultLog.Entry(definitions.id(), definition.version(), System.currentTimeMillis(),
+				state.outcome(), state.answers()));
+		}
+	}
+
+	private Response reset(Definitions definitions, String basePath, HttpHeaders headers) {
+		var timing = ServerTiming.start(serverTiming, "reset");
+		var loadedQuiz = quizStore.load(definitions, headers);
+		timing.mark(Phase.SESSION);
+		var currentQuiz = quizStore.restart(definitions, loadedQuiz, headers);
+		timing.mark(Phase.QUIZ);
+		var response = quizStore.save(definitions, currentQuiz, Response.seeOther(URI.create(basePath + "start")));
+		timing.mark(Phase.SESSION);
+		return timing.addTo(response).build();
+	}
+
+	private Response result(Definitions definitions, String basePath, Request request, HttpHeaders headers) {
+
+		var timing = ServerTiming.start(serverTiming, "result");
+		var currentQuiz = quizStore.load(definitions, headers);
+		timing.mark(Phase.SESSION);
+		var start = System.nanoTime();
+		var result = currentQuiz.getResult();
+		resultTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		timing.mark(Phase.QUIZ);
+		Response.ResponseBuilder response;
+		if (result.isPresent()) {
+			response = pageCache.result(currentQuiz.getCompiledDefinition(), basePath, result.get(), request, headers);
+			timing.mark(Phase.RENDER);
+		} else {
+			response = Response.seeOther(URI.create(basePath + "start"));
+		}
+		response = quizStore.save(definitions, currentQuiz, response);
+		timing.mark(Phase.SESSION);
+		return timing.addTo(response).build();
+	}
+
+	private Response sharedResult(Definitions definitions, String basePath, String name, Request request,
+		HttpHeaders headers) {
+
+		var definition = definitions.current();
+		return definition.result(name)
+			.map(outcome -> pageCache.sharedResult(definition, basePath, outcome, request, headers).build())
+			.orElseGet(() -> Response.status(Response.Status.NOT_FOUND).build());
+	}
 }
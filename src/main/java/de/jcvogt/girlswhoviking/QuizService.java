@@ -16,42 +16,288 @@
 package de.jcvogt.girlswhoviking;
 
 import de.jcvogt.girlswhoviking.Quiz.Definition;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.LaunchMode;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalDouble;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
-import javax.enterprise.context.SessionScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Disposes;
 import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
+ * Provides the definition of the quiz. The definition is either taken from the classpath or from an external file
+ * configured via {@literal girlswhoviking.questions-file}. An external file is watched for changes; a changed
+ * definition is parsed and validated on the watcher thread and then activated as a new version, while quizzes that
+ * have already been started finish on the version they started with. Invalid changes are logged and ignored.
+ *
  * @author Michael J. Simons
  */
 @ApplicationScoped
 class QuizService {
 
-	private final Definition definition;
+	private static final Logger LOGGER = Logger.getLogger(QuizService.class);
+
+	private static final class Json {
+
+		static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	}
+
+	private final Optional<Path> questionsFile;
+
+	private final Definitions definitions;
+
+	private final Timer loading;
+
+	private DefinitionWatcher watcher;
+
+	QuizService(
+		@ConfigProperty(name = "girlswhoviking.questions") String questions,
+		@ConfigProperty(name = "girlswhoviking.questions-file") Optional<String> questionsFile,
+		MeterRegistry meterRegistry
+	) {
+		this.questionsFile = questionsFile.map(Path::of);
+		this.loading = Metrics.timer(meterRegistry, "quiz.definitions.load", "Time spent loading a quiz definition",
+			"source", this.questionsFile.isPresent() ? "file" : "classpath");
+		var definition = loading.record(() -> this.questionsFile
+			.map(QuizService::readDefinition)
+			.orElseGet(() -> loadDefinition(questions)));
+		this.definitions = new Definitions(CompiledDefinition.of(definition).validate());
+	}
 
-	QuizService(@ConfigProperty(name = "girlswhoviking.questions") String questions, ObjectMapper objectMapper) {
+	void startWatching(@Observes StartupEvent event) throws IOException {
+		if (questionsFile.isPresent()) {
+			this.watcher = DefinitionWatcher.start(questionsFile.get(), this::reload);
+		}
+	}
+
+	@PreDestroy
+	void stopWatching() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+		}
+	}
+
+	/**
+	 * Reads the external definition again and activates it if it is valid and differs from the current one.
+	 */
+	void reload() {
+		var file = questionsFile.orElseThrow(() -> new IllegalStateException("No external definition configured."));
 		try {
-			this.definition = objectMapper.readValue(this.getClass().getClassLoader().getResourceAsStream(questions),
-				Definition.class);
+			var definition = loading.record(() -> CompiledDefinition.of(readDefinition(file)).validate());
+			if (definitions.activate(definition)) {
+				LOGGER.infof("Activated version %s of the quiz definition from %s.", definition.version(), file);
+			}
+		} catch (RuntimeException e) {
+			LOGGER.errorf(e, "Could not load %s, keeping version %s of the quiz definition.", file,
+				definitions.current().version());
+		}
+	}
+
+	static Definition readDefinition(Path file) {
+		try (var in = Files.newInputStream(file)) {
+			return Json.OBJECT_MAPPER.readValue(in, Definition.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Loads the definition precompiled by {@link DefinitionCodec} during the build. Outside dev mode, the binary
+	 * version is read on its own: Inside a packaged application, it has always been compiled from the JSON next to it.
+	 * In dev mode, the JSON source is parsed when there is no binary version yet or when the binary version has been
+	 * compiled from a different version of the JSON, i.e. the JSON has been edited without compiling it again.
+	 *
+	 * @param questions the name of the JSON definition
+	 * @return the definition
+	 */
+	private static Definition loadDefinition(String questions) {
+		var binary = readResource(DefinitionCodec.binaryName(questions));
+		if (binary != null && LaunchMode.current() != LaunchMode.DEVELOPMENT) {
+			return DefinitionCodec.decode(binary);
+		}
+
+		var source = readResource(questions);
+		if (binary != null && (source == null || DefinitionCodec.isCompiledFrom(binary, source))) {
+			return DefinitionCodec.decode(binary);
+		}
+		if (source == null) {
+			throw new IllegalArgumentException("No definition named " + questions + " found.");
+		}
+
+		if (binary == null) {
+			LOGGER.infof("No precompiled definition for %s found, parsing JSON.", questions);
+		} else {
+			LOGGER.infof("Precompiled definition for %s is out of date, parsing JSON.", questions);
+		}
+		try {
+			return Json.OBJECT_MAPPER.readValue(source, Definition.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] readResource(String name) {
+		try (var in = QuizService.class.getClassLoader().getResourceAsStream(name)) {
+			return in == null ? null : in.readAllBytes();
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
 	Definition getDefinition() {
-		return definition;
+		return definitions.current().definition();
+	}
+
+	CompiledDefinition getCompiledDefinition() {
+		return definitions.current();
+	}
+
+	Definitions getDefinitions() {
+		return definitions;
 	}
 
-	@Produces
-	@SessionScoped
 	Quiz newQuiz() {
-		return new Quiz(this.definition);
+		return new Quiz(definitions.current());
+	}
+
+	/**
+	 * Creates the store eagerly, so that quizzes of a snapshot are restored during startup.
+	 */
+	@Produces
+	@Singleton
+	@Startup
+	@SuppressWarnings("deprecation")
+	QuizStore quizStore(
+		@ConfigProperty(name = "girlswhoviking.state-mode", defaultValue = "store") QuizStore.Mode mode,
+		@ConfigProperty(name = "girlswhoviking.token.secret") Optional<String> secret,
+		@ConfigProperty(name = "girlswhoviking.store.max-sessions", defaultValue = "10000") int maxSessions,
+		@ConfigProperty(name = "girlswhoviking.store.max-idle", defaultValue = "30M") Duration maxIdle,
+		@ConfigProperty(name = "girlswhoviking.store.snapshot-file") Optional<String> snapshotFile,
+		QuizCatalog quizCatalog,
+		MeterRegistry meterRegistry
+	) {
+		if (mode == QuizStore.Mode.SESSION) {
+			LOGGER.warn("girlswhoviking.state-mode=session is deprecated, using the managed store instead.");
+		}
+		return switch (mode) {
+			case STORE, SESSION -> {
+				var store = new ManagedQuizStore(maxSessions, maxIdle, meterRegistry);
+				snapshotFile.map(Path::of).ifPresent(file -> restore(store, file, quizCatalog));
+				yield store;
+			}
+			case TOKEN -> new TokenQuizStore(secret
+				.map(s -> s.getBytes(StandardCharsets.UTF_8))
+				.orElseGet(QuizService::generateSecret));
+		};
+	}
+
+	void snapshotQuizStore(
+		@Disposes QuizStore quizStore,
+		@ConfigProperty(name = "girlswhoviking.store.snapshot-file") Optional<String> snapshotFile
+	) {
+		if (!(quizStore instanceof ManagedQuizStore store) || snapshotFile.isEmpty()) {
+			return;
+		}
+		var file = Path.of(snapshotFile.get());
+		try {
+			LOGGER.infof("Saved %d quizzes to %s.", store.snapshot(file), file);
+		} catch (IOException e) {
+			LOGGER.errorf(e, "Could not save quizzes to %s.", file);
+		}
+	}
+
+	private void restore(ManagedQuizStore store, Path file, QuizCatalog quizCatalog) {
+		try {
+			var restored = store.restore(file, id -> Definitions.DEFAULT_ID.equals(id)
+				? Optional.of(definitions)
+				: quizCatalog.get(id).toCompletableFuture().join());
+			LOGGER.infof("Restored %d quizzes from %s.", restored, file);
+		} catch (IOException e) {
+			LOGGER.errorf(e, "Could not restore quizzes from %s.", file);
+		}
+	}
+
+	@Produces
+	@Singleton
+	QuizCatalog quizCatalog(
+		@ConfigProperty(name = "girlswhoviking.quizzes.directory") Optional<String> directory,
+		@ConfigProperty(name = "girlswhoviking.quizzes.max-cached", defaultValue = "32") int maxCached,
+		MeterRegistry meterRegistry
+	) {
+		return new QuizCatalog(directory.map(Path::of), maxCached, Infrastructure.getDefaultWorkerPool(),
+			meterRegistry);
+	}
+
+	@Produces
+	@Singleton
+	QuizAnalytics quizAnalytics(
+		@ConfigProperty(name = "girlswhoviking.analytics.max-definitions", defaultValue = "64") int maxDefinitions
+	) {
+		return new QuizAnalytics(maxDefinitions);
+	}
+
+	@Produces
+	@Singleton
+	AdmissionControl admissionControl(
+		@ConfigProperty(name = "girlswhoviking.admission.rate") OptionalDouble rate,
+		@ConfigProperty(name = "girlswhoviking.admission.burst", defaultValue = "20") int burst,
+		@ConfigProperty(name = "girlswhoviking.admission.stripes", defaultValue = "4096") int stripes,
+		MeterRegistry meterRegistry
+	) {
+		return new AdmissionControl(rate, burst, stripes, meterRegistry);
+	}
+
+	/**
+	 * Opens the result log eagerly, so that its checkpoint is restored during startup and not on the first request.
+	 */
+	@Produces
+	@Singleton
+	@Startup
+	ResultLog resultLog(
+		@ConfigProperty(name = "girlswhoviking.result-log.directory") Optional<String> directory,
+		@ConfigProperty(name = "girlswhoviking.result-log.segment-size", defaultValue = "4194304") int segmentSize,
+		@ConfigProperty(name = "girlswhoviking.result-log.retained-segments", defaultValue = "16") int retainedSegments,
+		@ConfigProperty(name = "girlswhoviking.result-log.max-backlog", defaultValue = "8192") int maxBacklog,
+		MeterRegistry meterRegistry
+	) throws IOException {
+		if (directory.isEmpty()) {
+			return ResultLog.disabled(meterRegistry);
+		}
+		var resultLog = ResultLog.open(Path.of(directory.get()), segmentSize, retainedSegments, maxBacklog,
+			meterRegistry);
+		LOGGER.infof("Logging results to %s.", directory.get());
+		return resultLog;
+	}
+
+	void closeResultLog(@Disposes ResultLog resultLog) {
+		resultLog.close();
+	}
+
+	private static byte[] generateSecret() {
+		LOGGER.warn("No girlswhoviking.token.secret configured, tokens will only be valid for this instance.");
+		var secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+		return secret;
 	}
 }
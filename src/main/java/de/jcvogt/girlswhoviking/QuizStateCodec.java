@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * The compact binary form of the progress of a quiz: Format version, version of the definition, seed of the quiz,
+ * question index, chosen outcome, the counts per outcome and the answers given so far, all but the seed as var ints.
+ * A state takes a few dozen bytes and references its definition only by version, so it is restored on whatever
+ * instance of that definition is {@link Definitions known} when decoding. Used for the signed tokens of the
+ * {@link TokenQuizStore} and the snapshots of the {@link ManagedQuizStore}.
+ *
+ * @author Michael J. Simons
+ */
+final class QuizStateCodec {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int DEFINITION_VERSION_LENGTH = 6;
+
+	private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+	/**
+	 * Encodes the state of the given quiz.
+	 *
+	 * @param quiz the quiz to encode
+	 * @return the encoded state
+	 */
+	static byte[] encode(Quiz quiz) {
+		var state = quiz.getState();
+		var out = new ByteArrayOutputStream(12 + DEFINITION_VERSION_LENGTH + state.counts().length * 2 + state.idx());
+		out.write(FORMAT_VERSION);
+		out.writeBytes(HEX_FORMAT.parseHex(quiz.getCompiledDefinition().version()));
+		writeInt(out, state.seed());
+		writeVarInt(out, state.idx());
+		writeVarInt(out, state.outcome() + 1);
+		for (int count : state.counts()) {
+			writeVarInt(out, (count << 1) ^ (count >> 31));
+		}
+		for (int i = 0; i < state.idx(); i++) {
+			writeVarInt(out, state.answers()[i] + 1);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a state from the current position of {@code in}, leaving the position after the state.
+	 *
+	 * @param definitions the definitions to restore the quiz on
+	 * @param in          the encoded state
+	 * @return a quiz with the decoded state
+	 * @throws IllegalArgumentException if the state is malformed, doesn't fit its definition or the definition is
+	 *                                  unknown
+	 * @throws java.nio.BufferUnderflowException if the state is truncated
+	 */
+	static Quiz decode(Definitions definitions, ByteBuffer in) {
+		if (in.get() != FORMAT_VERSION) {
+			throw new IllegalArgumentException("Unsupported state format.");
+		}
+		var version = new byte[DEFINITION_VERSION_LENGTH];
+		in.get(version);
+		var definition = definitions.get(HEX_FORMAT.formatHex(version))
+			.orElseThrow(() -> new IllegalArgumentException("Unknown definition version."));
+		var seed = in.getInt();
+		var idx = readVarInt(in);
+		var outcome = readVarInt(in) - 1;
+		var counts = new int[definition.numberOfOutcomes()];
+		for (int i = 0; i < counts.length; i++) {
+			var value = readVarInt(in);
+			counts[i] = (value >>> 1) ^ -(value & 1);
+		}
+		if (idx < 0 || idx > definition.numberOfQuestions()) {
+			throw new IllegalArgumentException("Invalid question index (%d)".formatted(idx));
+		}
+		var answers = new int[definition.numberOfQuestions()];
+		Arrays.fill(answers, -1);
+		for (int i = 0; i < idx; i++) {
+			answers[i] = readVarInt(in) - 1;
+		}
+		return new Quiz(definition, new Quiz.State(idx, counts, outcome, seed, answers));
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			out.write(value >>> shift);
+		}
+	}
+
+	static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			var b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed var int.");
+	}
+
+	private QuizStateCodec() {
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Abstraction over where the progress of a quiz is kept between two requests. One store serves all hosted quizzes,
+ * the progress of each quiz is kept separately.
+ *
+ * @author Michael J. Simons
+ */
+interface QuizStore {
+
+	/**
+	 * Where to keep the progress of a quiz, configured via {@literal girlswhoviking.state-mode}.
+	 */
+	enum Mode {
+		/**
+		 * Keep the quiz in a bounded, server side store.
+		 */
+		STORE,
+		/**
+		 * Keep the progress in a signed token on the client side.
+		 */
+		TOKEN,
+		/**
+		 * Formerly kept the quiz in the HTTP session, which is not available on the event loop. Still accepted, so
+		 * that existing configurations keep working, and treated like {@link #STORE}, which keeps the quiz on the
+		 * server side as well.
+		 *
+		 * @deprecated use {@link #STORE}
+		 */
+		@Deprecated
+		SESSION
+	}
+
+	/**
+	 * Loads the quiz belonging to the current request, creating a new one if necessary.
+	 *
+	 * @param definitions the definitions of the requested quiz
+	 * @param headers     the headers of the current request
+	 * @return the quiz belonging to the current request
+	 */
+	Quiz load(Definitions definitions, HttpHeaders headers);
+
+	/**
+	 * Starts over. A quiz on the current definition is reset, otherwise it is replaced by a new quiz on the current
+	 * definition.
+	 *
+	 * @param definitions the definitions of the requested quiz
+	 * @param quiz        the quiz loaded for the current request
+	 * @param headers     the headers of the current request
+	 * @return the quiz to continue with
+	 */
+	Quiz restart(Definitions definitions, Quiz quiz, HttpHeaders headers);
+
+	/**
+	 * Stores the progress of the given quiz.
+	 *
+	 * @param definitions the definitions of the requested quiz
+	 * @param quiz        the quiz to store
+	 * @param response    the response that is about to be sent
+	 * @return the response
+	 */
+	Response.ResponseBuilder save(Definitions definitions, Quiz quiz, Response.ResponseBuilder response);
+}
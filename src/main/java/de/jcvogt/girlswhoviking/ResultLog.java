@@ -0,0 +1,554 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import org.jboss.logging.Logger;
+
+/**
+ * An append-only log of finished quizzes. Results are queued by the request threads without ever blocking and
+ * written in batches by a dedicated daemon thread into memory-mapped segments of a fixed size. A full segment is
+ * followed by a new one, each start of the application that logs any result begins a new segment as well. When the
+ * queue of pending results is full, new results are dropped and counted.
+ * <p>
+ * A segment starts with a magic number and the format version, followed by records consisting of the length of the
+ * record, a CRC32C checksum and the record itself: timestamp, version of the definition, outcome, id of the quiz and
+ * the selected answers, all numbers but the timestamp as var ints. A length of zero marks the unused rest of a
+ * segment, a record with a wrong checksum (i.e. torn by a crash) ends the segment as well.
+ * <p>
+ * The total number of results per quiz, definition and outcome is kept in a checkpoint, together with the sequence
+ * number of the first segment not contained in it. The checkpoint is written when the log is opened and after it has
+ * been closed, so that only the segments written since are replayed on startup, even after a crash. Segments
+ * contained in the checkpoint are deleted, except for the most recent ones, which are kept for
+ * {@link #replay(Path, Consumer) replaying} the individual results. Without a directory, the log is
+ * {@link #disabled(MeterRegistry) disabled} and ignores all results.
+ *
+ * @author Michael J. Simons
+ */
+final class ResultLog implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(ResultLog.class);
+
+	private static final String SEGMENT_PREFIX = "results-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final String CHECKPOINT = "checkpoint.bin";
+
+	private static final int CHECKPOINT_MAGIC = 0x47575643;
+
+	private static final int CHECKPOINT_FORMAT = 1;
+
+	private static final int MAGIC = 0x47575652;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int SEGMENT_HEADER_LENGTH = 5;
+
+	private static final int RECORD_HEADER_LENGTH = 8;
+
+	private static final int DEFINITION_VERSION_LENGTH = 6;
+
+	private static final int MAX_BATCH = 256;
+
+	private static final long POLL_MILLIS = 100;
+
+	private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+	/**
+	 * A finished quiz.
+	 *
+	 * @param quizId    the id of the quiz, empty for the default quiz
+	 * @param version   the version of the definition the quiz has been taken on
+	 * @param timestamp the time the quiz has been finished, in milliseconds since the epoch
+	 * @param outcome   the index of the outcome
+	 * @param answers   the index of the selected answer per question, {@literal -1} if unknown
+	 */
+	record Entry(String quizId, String version, long timestamp, int outcome, int[] answers) {
+	}
+
+	/**
+	 * The number of results of a quiz with the same outcome.
+	 *
+	 * @param quiz    the id of the quiz, empty for the default quiz
+	 * @param version the version of the definition
+	 * @param outcome the index of the outcome
+	 * @param total   the number of results
+	 */
+	@RegisterForReflection
+	record Total(String quiz, String version, int outcome, long total) {
+	}
+
+	private record TotalKey(String quiz, String version, int outcome) {
+	}
+
+	private final Path directory;
+
+	private final boolean enabled;
+
+	private final int segmentSize;
+
+	private final int retainedSegments;
+
+	private final BlockingQueue<Entry> queue;
+
+	private final Map<TotalKey, LongAdder> totals = new ConcurrentHashMap<>();
+
+	private final Thread writer;
+
+	private final Counter written;
+
+	private final Counter dropped;
+
+	private final Timer flush;
+
+	private long nextSegment;
+
+	private MappedByteBuffer segment;
+
+	private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+	private volatile boolean running;
+
+	private volatile boolean failed;
+
+	/**
+	 * Opens the log in the given directory, restores the checkpoint, replays the segments written since, writes a new
+	 * checkpoint and starts the writer.
+	 *
+	 * @param directory        the directory of the segments, created if necessary
+	 * @param segmentSize      the size of each segment in bytes
+	 * @param retainedSegments the number of segments to keep after their results have been checkpointed
+	 * @param maxBacklog       the maximum number of results waiting to be written
+	 * @param meterRegistry    the registry for the metrics of the log
+	 * @return the opened log
+	 * @throws IOException if the directory cannot be read or created or the checkpoint cannot be written
+	 */
+	static ResultLog open(Path directory, int segmentSize, int retainedSegments, int maxBacklog,
+		MeterRegistry meterRegistry) throws IOException {
+
+		if (segmentSize < SEGMENT_HEADER_LENGTH + RECORD_HEADER_LENGTH + 64) {
+			throw new IllegalArgumentException("Segments must be larger than a single record.");
+		}
+		if (retainedSegments < 0) {
+			throw new IllegalArgumentException("The number of retained segments must not be negative.");
+		}
+		Files.createDirectories(directory);
+		var log = new ResultLog(directory, segmentSize, retainedSegments, maxBacklog, meterRegistry);
+		var firstSegment = log.restoreCheckpoint();
+		var segments = segments(directory);
+		for (var segment : segments) {
+			if (sequence(segment) >= firstSegment) {
+				replaySegment(segment, log::count);
+			}
+		}
+		log.nextSegment = segments.isEmpty()
+			? firstSegment
+			: Math.max(firstSegment, sequence(segments.get(segments.size() - 1)) + 1);
+		log.checkpoint();
+		log.running = true;
+		log.writer.start();
+		return log;
+	}
+
+	/**
+	 * Creates a log that ignores all results.
+	 *
+	 * @param meterRegistry the registry for the metrics of the log
+	 * @return a disabled log
+	 */
+	static ResultLog disabled(MeterRegistry meterRegistry) {
+		return new ResultLog(null, 0, 0, 1, meterRegistry);
+	}
+
+	private ResultLog(Path directory, int segmentSize, int retainedSegments, int maxBacklog,
+		MeterRegistry meterRegistry) {
+		this.directory = directory;
+		this.enabled = directory != null;
+		this.segmentSize = segmentSize;
+		this.retainedSegments = retainedSegments;
+		this.queue = new ArrayBlockingQueue<>(maxBacklog);
+		this.writer = new Thread(this::write, "result-log-writer");
+		this.writer.setDaemon(true);
+
+		Gauge.builder("quiz.results.backlog", queue, BlockingQueue::size)
+			.description("Number of results waiting to be written")
+			.register(meterRegistry);
+		this.written = Counter.builder("quiz.results.logged")
+			.description("Number of results handled by the result log")
+			.tag("result", "written")
+			.register(meterRegistry);
+		this.dropped = Counter.builder("quiz.results.logged")
+			.description("Number of results handled by the result log")
+			.tag("result", "dropped")
+			.register(meterRegistry);
+		this.flush = Metrics.timer(meterRegistry, "quiz.results.flush", "Time spent writing a batch of results");
+	}
+
+	/**
+	 * Queues a result for writing, without blocking.
+	 *
+	 * @param entry the result
+	 * @return {@literal true} if the result has been queued, {@literal false} if the backlog is full or the log is
+	 * closed or disabled
+	 */
+	boolean append(Entry entry) {
+		if (!enabled) {
+			return false;
+		}
+		if (!running || !queue.offer(entry)) {
+			dropped.increment();
+			return false;
+		}
+		count(entry);
+		return true;
+	}
+
+	/**
+	 * {@return the number of results per quiz, definition and outcome, including all replayed results}
+	 */
+	List<Total> totals() {
+		return totals.entrySet().stream()
+			.map(e -> new Total(e.getKey().quiz(), e.getKey().version(), e.getKey().outcome(), e.getValue().sum()))
+			.sorted(Comparator.comparing(Total::quiz).thenComparing(Total::version).thenComparingInt(Total::outcome))
+			.toList();
+	}
+
+	/**
+	 * Reads all results from the segments in the given directory, in the order they have been written. Results of
+	 * segments that have been deleted after being checkpointed are not included.
+	 *
+	 * @param directory the directory of the segments
+	 * @param consumer  receives the results
+	 * @throws IOException if the segments cannot be read
+	 */
+	static void replay(Path directory, Consumer<Entry> consumer) throws IOException {
+		for (var segment : segments(directory)) {
+			replaySegment(segment, consumer);
+		}
+	}
+
+	private void count(Entry entry) {
+		totals.computeIfAbsent(new TotalKey(entry.quizId(), entry.version(), entry.outcome()), k -> new LongAdder())
+			.increment();
+	}
+
+	private void write() {
+
+		var batch = new ArrayList<Entry>(MAX_BATCH);
+		try {
+			while (running || !queue.isEmpty()) {
+				var first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, MAX_BATCH - 1);
+				var start = System.nanoTime();
+				for (var entry : batch) {
+					write(entry);
+				}
+				if (segment != null) {
+					segment.force();
+				}
+				flush.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				written.increment(batch.size());
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException | UncheckedIOException e) {
+			running = false;
+			failed = true;
+			LOGGER.errorf(e, "Could not write results to %s, no further results will be logged", directory);
+		}
+	}
+
+	private void write(Entry entry) throws IOException {
+
+		var body = encode(entry);
+		var length = body.remaining();
+		if (RECORD_HEADER_LENGTH + length > segmentSize - SEGMENT_HEADER_LENGTH) {
+			LOGGER.warnf("Result of quiz '%s' is too large for a segment", entry.quizId());
+			dropped.increment();
+			return;
+		}
+		if (segment == null || segment.remaining() < RECORD_HEADER_LENGTH + length) {
+			nextSegment();
+		}
+		var checksum = new CRC32C();
+		checksum.update(body.duplicate());
+		segment.putInt(length);
+		segment.putInt((int) checksum.getValue());
+		segment.put(body);
+	}
+
+	private void nextSegment() throws IOException {
+		if (segment != null) {
+			segment.force();
+		}
+		var file = directory.resolve("%s%020d%s".formatted(SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+			StandardOpenOption.WRITE)) {
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+		segment.putInt(MAGIC);
+		segment.put((byte) FORMAT_VERSION);
+	}
+
+	/**
+	 * Writes the current totals as checkpoint containing all segments before {@link #nextSegment} and deletes the
+	 * segments that are neither needed for the totals nor retained. Must not be called while the writer is running.
+	 */
+	private void checkpoint() throws IOException {
+
+		var entries = totals();
+		var quizIds = new byte[entries.size()][];
+		var length = Integer.BYTES + 1 + Long.BYTES + 5 + Integer.BYTES;
+		for (int i = 0; i < quizIds.length; i++) {
+			quizIds[i] = entries.get(i).quiz().getBytes(StandardCharsets.UTF_8);
+			length += 5 + quizIds[i].length + DEFINITION_VERSION_LENGTH + 5 + Long.BYTES;
+		}
+		var out = ByteBuffer.allocate(length)
+			.putInt(CHECKPOINT_MAGIC)
+			.put((byte) CHECKPOINT_FORMAT)
+			.putLong(nextSegment);
+		writeVarInt(out, entries.size());
+		for (int i = 0; i < quizIds.length; i++) {
+			var total = entries.get(i);
+			writeVarInt(out, quizIds[i].length);
+			out.put(quizIds[i]);
+			out.put(HEX_FORMAT.parseHex(total.version()), 0, DEFINITION_VERSION_LENGTH);
+			writeVarInt(out, total.outcome());
+			out.putLong(total.total());
+		}
+		var checksum = new CRC32C();
+		checksum.update(out.array(), 0, out.position());
+		out.putInt((int) checksum.getValue());
+
+		var file = directory.resolve(CHECKPOINT);
+		var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(tmp, Arrays.copyOf(out.array(), out.position()));
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		var checkpointed = segments(directory).stream().filter(f -> sequence(f) < nextSegment).toList();
+		for (var obsolete : checkpointed.subList(0, Math.max(0, checkpointed.size() - retainedSegments))) {
+			Files.delete(obsolete);
+		}
+	}
+
+	/**
+	 * Adds the totals of the checkpoint, if there is a valid one.
+	 *
+	 * @return the sequence number of the first segment not contained in the checkpoint
+	 */
+	private long restoreCheckpoint() throws IOException {
+
+		var file = directory.resolve(CHECKPOINT);
+		if (!Files.isRegularFile(file)) {
+			return 0;
+		}
+		var in = ByteBuffer.wrap(Files.readAllBytes(file));
+		try {
+			var checksum = new CRC32C();
+			checksum.update(in.array(), 0, in.limit() - Integer.BYTES);
+			if (in.getInt(in.limit() - Integer.BYTES) == (int) checksum.getValue()
+				&& in.getInt() == CHECKPOINT_MAGIC && in.get() == CHECKPOINT_FORMAT) {
+				var firstSegment = in.getLong();
+				var restored = new ArrayList<Total>();
+				for (int i = readVarInt(in); i > 0; --i) {
+					var quizId = new byte[readVarInt(in)];
+					in.get(quizId);
+					var version = new byte[DEFINITION_VERSION_LENGTH];
+					in.get(version);
+					restored.add(new Total(new String(quizId, StandardCharsets.UTF_8), HEX_FORMAT.formatHex(version),
+						readVarInt(in), in.getLong()));
+				}
+				for (var total : restored) {
+					totals.computeIfAbsent(new TotalKey(total.quiz(), total.version(), total.outcome()),
+						k -> new LongAdder()).add(total.total());
+				}
+				return firstSegment;
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			// Handled below
+		}
+		LOGGER.warnf("Ignoring %s, not a valid checkpoint of the result log", file);
+		return 0;
+	}
+
+	private ByteBuffer encode(Entry entry) {
+
+		var quizId = entry.quizId().getBytes(StandardCharsets.UTF_8);
+		var maxLength = Long.BYTES + DEFINITION_VERSION_LENGTH + 5 * (3 + entry.answers().length) + quizId.length;
+		if (scratch.capacity() < maxLength) {
+			scratch = ByteBuffer.allocate(Math.max(maxLength, scratch.capacity() * 2));
+		}
+		scratch.clear();
+		scratch.putLong(entry.timestamp());
+		scratch.put(HEX_FORMAT.parseHex(entry.version()), 0, DEFINITION_VERSION_LENGTH);
+		writeVarInt(scratch, entry.outcome());
+		writeVarInt(scratch, quizId.length);
+		scratch.put(quizId);
+		writeVarInt(scratch, entry.answers().length);
+		for (int answer : entry.answers()) {
+			writeVarInt(scratch, answer + 1);
+		}
+		return scratch.flip();
+	}
+
+	private static Entry decode(ByteBuffer body) {
+
+		var timestamp = body.getLong();
+		var version = new byte[DEFINITION_VERSION_LENGTH];
+		body.get(version);
+		var outcome = readVarInt(body);
+		var quizId = new byte[readVarInt(body)];
+		body.get(quizId);
+		var answers = new int[readVarInt(body)];
+		for (int i = 0; i < answers.length; i++) {
+			answers[i] = readVarInt(body) - 1;
+		}
+		return new Entry(new String(quizId, StandardCharsets.UTF_8), HEX_FORMAT.formatHex(version), timestamp, outcome,
+			answers);
+	}
+
+	private static void replaySegment(Path segment, Consumer<Entry> consumer) throws IOException {
+
+		ByteBuffer buffer;
+		try (var channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.remaining() < SEGMENT_HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.get() != FORMAT_VERSION) {
+			LOGGER.warnf("Skipping %s, not a segment of the result log", segment);
+			return;
+		}
+		var checksum = new CRC32C();
+		while (buffer.remaining() >= RECORD_HEADER_LENGTH) {
+			var length = buffer.getInt();
+			var expectedChecksum = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining()) {
+				return;
+			}
+			var body = buffer.slice(buffer.position(), length);
+			checksum.reset();
+			checksum.update(body.duplicate());
+			if ((int) checksum.getValue() != expectedChecksum) {
+				LOGGER.warnf("Ignoring the rest of %s, found a corrupt record", segment);
+				return;
+			}
+			try {
+				consumer.accept(decode(body));
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				LOGGER.warnf("Ignoring the rest of %s, found a malformed record", segment);
+				return;
+			}
+			buffer.position(buffer.position() + length);
+		}
+	}
+
+	private static List<Path> segments(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return List.of();
+		}
+		try (var files = Files.list(directory)) {
+			return files
+				.filter(f -> f.getFileName().toString().matches(SEGMENT_PREFIX + "\\d{20}" + SEGMENT_SUFFIX))
+				.sorted()
+				.toList();
+		}
+	}
+
+	private static long sequence(Path segment) {
+		var name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private static void writeVarInt(ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			var b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed var int.");
+	}
+
+	/**
+	 * Stops accepting results, waits until all queued results have been written and checkpoints them.
+	 */
+	@Override
+	public void close() {
+		if (!enabled) {
+			return;
+		}
+		running = false;
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writer.isAlive() || failed) {
+			return;
+		}
+		try {
+			checkpoint();
+		} catch (IOException e) {
+			LOGGER.errorf(e, "Could not checkpoint the results in %s", directory);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.smallrye.common.annotation.NonBlocking;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * Scores a complete quiz in a single request, for clients that present the questions themselves. The answers are
+ * validated against and scored with the current definition of the quiz, with the same rules as answering the
+ * questions one by one. Nothing is stored, the response contains the outcome and the URL of its shareable page.
+ * Answers and outcomes are recorded in the {@link QuizAnalytics analytics} and the {@link ResultLog result log} and
+ * requests are subject to the {@link AdmissionControl admission control} like those of the HTML endpoints.
+ *
+ * @author Michael J. Simons
+ */
+@Path("/api")
+@NonBlocking
+public class ScoringResource {
+
+	/**
+	 * The answers of a complete quiz.
+	 *
+	 * @param answers the 0-based index of the selected answer for each question, in order of the questions
+	 */
+	@RegisterForReflection
+	public record Answers(List<Integer> answers) {
+	}
+
+	/**
+	 * The outcome of a quiz.
+	 *
+	 * @param quiz      the id of the quiz, empty for the default quiz
+	 * @param version   the version of the definition used for scoring
+	 * @param outcome   the selected outcome
+	 * @param resultUrl the URL of the shareable page of the outcome
+	 */
+	@RegisterForReflection
+	public record Score(String quiz, String version, Quiz.Outcome outcome, URI resultUrl) {
+	}
+
+	/**
+	 * Describes why answers have been rejected.
+	 *
+	 * @param message a message describing the problem
+	 */
+	@RegisterForReflection
+	public record Problem(String message) {
+	}
+
+	private final QuizService quizService;
+	private final QuizCatalog quizCatalog;
+	private final QuizAnalytics quizAnalytics;
+	private final ResultLog resultLog;
+	private final AdmissionControl admissionControl;
+	private final Timer scoreTimer;
+
+	public ScoringResource(QuizService quizService, QuizCatalog quizCatalog, QuizAnalytics quizAnalytics,
+		ResultLog resultLog, AdmissionControl admissionControl, MeterRegistry meterRegistry) {
+		this.quizService = quizService;
+		this.quizCatalog = quizCatalog;
+		this.quizAnalytics = quizAnalytics;
+		this.resultLog = resultLog;
+		this.admissionControl = admissionControl;
+		this.scoreTimer = Metrics.timer(meterRegistry, "quiz.score", "Time spent scoring a complete quiz");
+	}
+
+	@Path("score")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "score", "quiz", "default"}, histogram = true)
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response score(Answers answers, @Context UriInfo uriInfo, @Context HttpServerRequest httpRequest) {
+		if (!admissionControl.admit(QuizResource.clientAddress(httpRequest))) {
+			return QuizResource.tooManyRequests(admissionControl.retryAfterSeconds());
+		}
+		return score(quizService.getDefinitions(), "/", answers, uriInfo);
+	}
+
+	@Path("quiz/{quizId}/score")
+	@Timed(value = Metrics.REQUESTS, extraTags = {"endpoint", "score", "quiz", "hosted"}, histogram = true)
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public CompletionStage<Response> score(@PathParam("quizId") String quizId, Answers answers,
+		@Context UriInfo uriInfo, @Context HttpServerRequest httpRequest) {
+		if (!admissionControl.admit(QuizResource.clientAddress(httpRequest))) {
+			var rejected = QuizResource.tooManyRequests(admissionControl.retryAfterSeconds());
+			return CompletableFuture.completedFuture(rejected);
+		}
+		return QuizResource.onRequestContext(quizCatalog.get(quizId)).thenApply(definitions -> definitions
+			.map(d -> score(d, "/quiz/" + quizId + "/", answers, uriInfo))
+			.orElseGet(() -> Response.status(Response.Status.NOT_FOUND).build()));
+	}
+
+	private Response score(Definitions definitions, String basePath, Answers answers, UriInfo uriInfo) {
+
+		if (answers == null || answers.answers() == null || answers.answers().contains(null)) {
+			return badRequest("A list of answers is required");
+		}
+		var selectedAnswers = answers.answers().stream().mapToInt(Integer::intValue).toArray();
+		var definition = definitions.current();
+		int outcome;
+		var start = System.nanoTime();
+		try {
+			outcome = definition.evaluate(selectedAnswers, ThreadLocalRandom.current());
+		} catch (IllegalArgumentException e) {
+			return badRequest(e.getMessage());
+		} finally {
+			scoreTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+		if (outcome < 0) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+
+		for (int i = 0; i < selectedAnswers.length; i++) {
+			quizAnalytics.answered(definitions.id(), definition, i, selectedAnswers[i]);
+		}
+		quizAnalytics.finished(definitions.id(), definition, outcome);
+		resultLog.append(new ResultLog.Entry(definitions.id(), definition.version(), System.currentTimeMillis(),
+			outcome, selectedAnswers));
+
+		var result = definition.result(outcome).orElseThrow();
+		var resultUrl = uriInfo.getBaseUriBuilder()
+			.path(basePath)
+			.path("results/{outcome}")
+			.build(result.name());
+		return Response.ok(new Score(definitions.id(), definition.version(), result, resultUrl)).build();
+	}
+
+	private static Response badRequest(String message) {
+		return Response.status(Response.Status.BAD_REQUEST).entity(new Problem(message)).build();
+	}
+}
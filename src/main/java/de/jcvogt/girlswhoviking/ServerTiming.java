@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.util.Locale;
+
+import javax.ws.rs.core.Response;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Breaks the time spent handling a request down into phases and reports them in a {@literal Server-Timing} header,
+ * which is shown by the developer tools of browsers, and in a debug log line. A phase is ended by {@link #mark(Phase)},
+ * which attributes the time since the previous mark to it, so that each phase costs a single read of the timer.
+ * <p>
+ * Timings are only taken when {@literal girlswhoviking.server-timing.enabled} is set. Otherwise the
+ * {@link #DISABLED disabled} instance is used, which neither reads the timer nor allocates.
+ *
+ * @author Michael J. Simons
+ */
+final class ServerTiming {
+
+	static final String HEADER = "Server-Timing";
+
+	private static final Logger LOGGER = Logger.getLogger(ServerTiming.class);
+
+	/**
+	 * Phases of a request.
+	 */
+	enum Phase {
+		/**
+		 * Loading and saving the quiz of the current user.
+		 */
+		SESSION("session", "Session lookup"),
+		/**
+		 * Evaluating answers, selecting outcomes and resetting quizzes.
+		 */
+		QUIZ("quiz", "Quiz state"),
+		/**
+		 * Rendering templates or retrieving pre-rendered pages.
+		 */
+		RENDER("render", "Rendering");
+
+		private final String metric;
+
+		private final String description;
+
+		Phase(String metric, String description) {
+			this.metric = metric;
+			this.description = description;
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	/**
+	 * The instance used when timings are disabled.
+	 */
+	static final ServerTiming DISABLED = new ServerTiming(null);
+
+	private final String endpoint;
+
+	private final long started;
+
+	private final long[] durations = new long[PHASES.length];
+
+	private long mark;
+
+	private int marked;
+
+	/**
+	 * Starts timing a request.
+	 *
+	 * @param enabled  whether timings are enabled
+	 * @param endpoint the name of the endpoint, used in the log
+	 * @return a new instance or the {@link #DISABLED disabled} instance
+	 */
+	static ServerTiming start(boolean enabled, String endpoint) {
+		return enabled ? new ServerTiming(endpoint) : DISABLED;
+	}
+
+	private ServerTiming(String endpoint) {
+		this.endpoint = endpoint;
+		this.started = endpoint == null ? 0 : System.nanoTime();
+		this.mark = started;
+	}
+
+	/**
+	 * Ends a phase.
+	 *
+	 * @param phase the phase that has just been finished
+	 */
+	void mark(Phase phase) {
+		if (this == DISABLED) {
+			return;
+		}
+		var now = System.nanoTime();
+		durations[phase.ordinal()] += now - mark;
+		marked |= 1 << phase.ordinal();
+		mark = now;
+	}
+
+	/**
+	 * Adds the {@literal Server-Timing} header to the given response.
+	 *
+	 * @param response the response that is about to be sent
+	 * @return the response
+	 */
+	Response.ResponseBuilder addTo(Response.ResponseBuilder response) {
+		if (this == DISABLED) {
+			return response;
+		}
+		var value = toHeaderValue(System.nanoTime() - started);
+		LOGGER.debugf("%s: %s", endpoint, value);
+		return response.header(HEADER, value);
+	}
+
+	String toHeaderValue(long total) {
+		var value = new StringBuilder();
+		for (var phase : PHASES) {
+			if ((marked & 1 << phase.ordinal()) == 0) {
+				continue;
+			}
+			value.append(phase.metric).append(";desc=\"").append(phase.description).append("\";dur=")
+				.append(millis(durations[phase.ordinal()])).append(", ");
+		}
+		return value.append("total;dur=").append(millis(total)).toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+	}
+}
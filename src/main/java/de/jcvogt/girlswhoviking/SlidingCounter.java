@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A counter that keeps its total in a {@link LongAdder} and additionally counts events per time bucket in ring buffers,
+ * so that the number of events during the last minute, hour and day can be read. Each bucket is a single
+ * {@literal long} that packs the epoch of the bucket into the upper and the count into the lower 32 bits; a bucket from
+ * an earlier epoch is restarted with the same compare-and-set that increments it. Incrementing is therefore lock-free
+ * and does not allocate.
+ *
+ * @author Michael J. Simons
+ */
+final class SlidingCounter {
+
+	/**
+	 * The windows that can be read.
+	 */
+	enum Window {
+		/**
+		 * 60 buckets of one second.
+		 */
+		MINUTE(TimeUnit.SECONDS.toNanos(1), 60),
+		/**
+		 * 60 buckets of one minute.
+		 */
+		HOUR(TimeUnit.MINUTES.toNanos(1), 60),
+		/**
+		 * 24 buckets of one hour.
+		 */
+		DAY(TimeUnit.HOURS.toNanos(1), 24);
+
+		private final long bucketNanos;
+
+		private final int buckets;
+
+		Window(long bucketNanos, int buckets) {
+			this.bucketNanos = bucketNanos;
+			this.buckets = buckets;
+		}
+	}
+
+	private static final Window[] WINDOWS = Window.values();
+
+	private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
+	private final LongSupplier ticker;
+
+	private final LongAdder total = new LongAdder();
+
+	private final AtomicLongArray[] rings = new AtomicLongArray[WINDOWS.length];
+
+	SlidingCounter(LongSupplier ticker) {
+		this.ticker = ticker;
+		for (var window : WINDOWS) {
+			rings[window.ordinal()] = new AtomicLongArray(window.buckets);
+		}
+	}
+
+	void increment() {
+
+		total.increment();
+		var now = ticker.getAsLong();
+		for (var window : WINDOWS) {
+			var ring = rings[window.ordinal()];
+			var epoch = Math.floorDiv(now, window.bucketNanos);
+			var slot = (int) Math.floorMod(epoch, window.buckets);
+			var stamp = epoch << 32;
+			long current;
+			long next;
+			do {
+				current = ring.get(slot);
+				next = (current & ~COUNT_MASK) == stamp ? current + 1 : stamp | 1;
+			} while (!ring.compareAndSet(slot, current, next));
+		}
+	}
+
+	/**
+	 * {@return the number of events since this counter has been created}
+	 */
+	long total() {
+		return total.sum();
+	}
+
+	/**
+	 * {@return the number of events during the given window, including the current bucket}
+	 *
+	 * @param window the window to read
+	 */
+	long sum(Window window) {
+
+		var ring = rings[window.ordinal()];
+		var currentEpoch = (int) Math.floorDiv(ticker.getAsLong(), window.bucketNanos);
+		long sum = 0;
+		for (int i = 0; i < ring.length(); i++) {
+			var bucket = ring.get(i);
+			var age = currentEpoch - (int) (bucket >>> 32);
+			if (bucket != 0 && age >= 0 && age < window.buckets) {
+				sum += bucket & COUNT_MASK;
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Response;
+
+/**
+ * Keeps the progress of a quiz in a compact, HMAC signed token on the client side. The token consists of the
+ * base64 encoded {@link QuizStateCodec state} and a truncated HMAC-SHA256 over it. A token is restored on the
+ * definition it has been started on, as long as that version is still {@link Definitions known}. Tokens that are
+ * tampered with or don't fit the definition are ignored and a new quiz is started. Each hosted quiz uses its own
+ * cookie.
+ *
+ * @author Michael J. Simons
+ */
+final class TokenQuizStore implements QuizStore {
+
+	static final String COOKIE_NAME = "quiz";
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final int SIGNATURE_LENGTH = 16;
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final Mac prototype;
+
+	TokenQuizStore(byte[] secret) {
+		try {
+			this.prototype = Mac.getInstance(ALGORITHM);
+			this.prototype.init(new SecretKeySpec(secret, ALGORITHM));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public Quiz load(Definitions definitions, HttpHeaders headers) {
+		var cookie = headers.getCookies().get(definitions.cookieName(COOKIE_NAME));
+		if (cookie == null) {
+			return new Quiz(definitions.current());
+		}
+		try {
+			return decode(definitions, cookie.getValue());
+		} catch (IllegalArgumentException | BufferUnderflowException e) {
+			return new Quiz(definitions.current());
+		}
+	}
+
+	@Override
+	public Quiz restart(Definitions definitions, Quiz quiz, HttpHeaders headers) {
+		var definition = definitions.current();
+		if (quiz.getCompiledDefinition() != definition) {
+			return new Quiz(definition);
+		}
+		quiz.reset();
+		return quiz;
+	}
+
+	@Override
+	public Response.ResponseBuilder save(Definitions definitions, Quiz quiz, Response.ResponseBuilder response) {
+		var cookie = new Cookie(definitions.cookieName(COOKIE_NAME), encode(quiz), "/", null);
+		return response.cookie(new NewCookie(cookie, null, NewCookie.DEFAULT_MAX_AGE, null, false, true));
+	}
+
+	String encode(Quiz quiz) {
+		var bytes = QuizStateCodec.encode(quiz);
+		return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(sign(bytes));
+	}
+
+	Quiz decode(Definitions definitions, String token) {
+		var separator = token.indexOf('.');
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid token.");
+		}
+		var bytes = DECODER.decode(token.substring(0, separator));
+		var signature = DECODER.decode(token.substring(separator + 1));
+		if (!MessageDigest.isEqual(sign(bytes), signature)) {
+			throw new IllegalArgumentException("Invalid signature.");
+		}
+
+		var payload = ByteBuffer.wrap(bytes);
+		var quiz = QuizStateCodec.decode(definitions, payload);
+		if (payload.hasRemaining()) {
+			throw new IllegalArgumentException("Invalid number of counts.");
+		}
+		return quiz;
+	}
+
+	private byte[] sign(byte[] payload) {
+		try {
+			var mac = (Mac) prototype.clone();
+			return Arrays.copyOf(mac.doFinal(payload), SIGNATURE_LENGTH);
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
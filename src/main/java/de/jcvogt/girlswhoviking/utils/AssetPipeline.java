@@ -0,0 +1,349 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+
+/**
+ * Build step that fingerprints the static assets below {@code META-INF/resources}. Each asset is copied to a name
+ * containing a hash of its content, text based assets get a precompressed gzip sibling. The mapping from the original
+ * to the fingerprinted path is stored in {@link Assets#MANIFEST}. Run by the {@literal exec-maven-plugin} during
+ * {@literal process-classes}.
+ * <p>
+ * Raster images are scaled down to the {@link #WIDTHS width ladder} of the banner, the resulting {@code srcset} is
+ * stored in {@link Assets#SRCSETS}. If {@literal cwebp} or {@literal avifenc} are on the {@literal PATH}, WebP and AVIF
+ * variants are written next to the fingerprinted images, using the same name with a different extension.
+ *
+ * @author Michael J. Simons
+ */
+public final class AssetPipeline {
+
+	static final Set<String> DIRECTORIES = Set.of("css", "img");
+
+	static final Set<String> COMPRESSIBLE = Set.of("css", "js", "svg", "txt");
+
+	static final Pattern FINGERPRINTED = Pattern.compile(".+\\.[0-9a-f]{10}\\.[^.]+(\\.gz)?");
+
+	static final Set<String> RASTER = Set.of("jpg", "jpeg", "png");
+
+	static final Pattern SCALED = Pattern.compile(".+_w_\\d+\\.[^.]+");
+
+	/**
+	 * A subset of the widths in which the banner is available.
+	 */
+	static final int[] WIDTHS = {480, 870, 1164};
+
+	/**
+	 * External encoders for modern image formats, in order of preference. The JDK cannot write any of them.
+	 */
+	static final List<ImageEncoder> ENCODERS = List.of(
+		new ImageEncoder("avif", "avifenc", "-s", "6", "-q", "60", "{in}", "{out}"),
+		new ImageEncoder("webp", "cwebp", "-quiet", "-q", "80", "{in}", "-o", "{out}")
+	);
+
+	/**
+	 * Entry point for the build.
+	 *
+	 * @param args the output directory of the build (usually {@literal target/classes})
+	 * @throws IOException if reading or writing assets fails
+	 */
+	public static void main(String... args) throws IOException {
+		if (args.length != 1) {
+			throw new IllegalArgumentException("Usage: AssetPipeline <classes directory>");
+		}
+		process(Path.of(args[0]));
+	}
+
+	static Map<String, String> process(Path classesDirectory) throws IOException {
+
+		var resources = classesDirectory.resolve(Assets.RESOURCES);
+		var ladders = scaleImages(resources.resolve("img"));
+		var encoders = ENCODERS.stream().filter(ImageEncoder::isAvailable).toList();
+		var manifest = new TreeMap<String, String>();
+		for (var directory : DIRECTORIES) {
+			if (!Files.isDirectory(resources.resolve(directory))) {
+				continue;
+			}
+			try (Stream<Path> assets = Files.walk(resources.resolve(directory))) {
+				for (var asset : assets.filter(Files::isRegularFile).toList()) {
+					var name = asset.getFileName().toString();
+					if (FINGERPRINTED.matcher(name).matches()) {
+						continue;
+					}
+					var fingerprinted = asset.resolveSibling(fingerprint(name, Files.readAllBytes(asset)));
+					Files.copy(asset, fingerprinted, StandardCopyOption.REPLACE_EXISTING);
+					if (COMPRESSIBLE.contains(extension(name))) {
+						gzip(fingerprinted);
+					} else if (RASTER.contains(extension(name))) {
+						for (var encoder : encoders) {
+							encoder.encode(fingerprinted);
+						}
+					}
+					manifest.put(toUrl(resources, asset), toUrl(resources, fingerprinted));
+				}
+			}
+		}
+
+		var srcsets = new TreeMap<String, String>();
+		ladders.forEach((image, ladder) -> srcsets.put(toUrl(resources, image), ladder.entrySet().stream()
+			.map(step -> manifest.get(toUrl(resources, step.getValue())) + " " + step.getKey() + "w")
+			.collect(Collectors.joining(", "))));
+
+		write(manifest, classesDirectory.resolve(Assets.MANIFEST));
+		write(srcsets, classesDirectory.resolve(Assets.SRCSETS));
+		return manifest;
+	}
+
+	/**
+	 * Creates scaled down copies named {@code <image>_w_<width>.<extension>} for all raster images wider than the
+	 * smallest step of the ladder. Existing copies are reused as long as they are newer than the original.
+	 *
+	 * @param images the directory containing the images
+	 * @return the ladder of each scaled image, including the original in its own width
+	 * @throws IOException if reading or writing an image fails
+	 */
+	static Map<Path, SortedMap<Integer, Path>> scaleImages(Path images) throws IOException {
+
+		if (!Files.isDirectory(images)) {
+			return Map.of();
+		}
+
+		List<Path> candidates;
+		try (Stream<Path> files = Files.walk(images)) {
+			candidates = files.filter(Files::isRegularFile).filter(image -> {
+				var name = image.getFileName().toString();
+				return RASTER.contains(extension(name)) && !FINGERPRINTED.matcher(name).matches()
+					&& !SCALED.matcher(name).matches();
+			}).sorted().toList();
+		}
+
+		var ladders = new LinkedHashMap<Path, SortedMap<Integer, Path>>();
+		for (var image : candidates) {
+			BufferedImage source = null;
+			var ladder = new TreeMap<Integer, Path>();
+			var name = image.getFileName().toString();
+			var extension = name.lastIndexOf('.');
+			for (var width : WIDTHS) {
+				var target = image.resolveSibling(
+					name.substring(0, extension) + "_w_" + width + name.substring(extension));
+				if (!isUpToDate(target, image)) {
+					source = source == null ? ImageIO.read(image.toFile()) : source;
+					// Not every file with a matching extension can be decoded by ImageIO, those are just fingerprinted
+					if (source == null || source.getWidth() <= width) {
+						break;
+					}
+					write(scale(source, width), extension(name), target);
+				}
+				ladder.put(width, target);
+			}
+			if (!ladder.isEmpty()) {
+				ladder.put(source == null ? width(image) : source.getWidth(), image);
+				ladders.put(image, ladder);
+			}
+		}
+		return ladders;
+	}
+
+	static String fingerprint(String name, byte[] content) {
+		try {
+			var hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content), 0, 5);
+			var extension = name.lastIndexOf('.');
+			return extension < 0
+				? name + "." + hash
+				: name.substring(0, extension) + "." + hash + name.substring(extension);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isUpToDate(Path target, Path source) throws IOException {
+		return Files.isRegularFile(target)
+			&& Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(source)) >= 0;
+	}
+
+	private static BufferedImage scale(BufferedImage source, int width) {
+
+		var height = Math.max(1, Math.round(source.getHeight() * (float) width / source.getWidth()));
+		var type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		// Halving the image in several steps gives much better results than bilinear scaling in one go
+		var current = source;
+		do {
+			var nextWidth = Math.max(width, current.getWidth() / 2);
+			var nextHeight = nextWidth == width ? height : Math.max(height, current.getHeight() / 2);
+			var next = new BufferedImage(nextWidth, nextHeight, type);
+			var graphics = next.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+			} finally {
+				graphics.dispose();
+			}
+			current = next;
+		} while (current.getWidth() != width);
+		return current;
+	}
+
+	private static void write(BufferedImage image, String format, Path target) throws IOException {
+
+		var writer = ImageIO.getImageWritersByFormatName(format).next();
+		var parameters = writer.getDefaultWriteParam();
+		if (!"png".equals(format)) {
+			parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			parameters.setCompressionQuality(0.85f);
+		}
+		try (var out = Files.newOutputStream(target); var imageOut = ImageIO.createImageOutputStream(out)) {
+			writer.setOutput(imageOut);
+			writer.write(null, new IIOImage(image, null, null), parameters);
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	private static int width(Path image) throws IOException {
+
+		try (var in = ImageIO.createImageInputStream(image.toFile())) {
+			var readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image " + image);
+			}
+			var reader = readers.next();
+			try {
+				reader.setInput(in);
+				return reader.getWidth(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private static void write(Map<String, String> entries, Path target) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+			for (var entry : entries.entrySet()) {
+				writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+			}
+		}
+	}
+
+	private static void gzip(Path asset) {
+		var target = asset.resolveSibling(asset.getFileName() + ".gz");
+		try (OutputStream out = new BestCompressionGZIPOutputStream(Files.newOutputStream(target))) {
+			Files.copy(asset, out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static String extension(String name) {
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+
+	private static String toUrl(Path resources, Path asset) {
+		return "/" + resources.relativize(asset).toString().replace('\\', '/');
+	}
+
+	/**
+	 * An external encoder for a modern image format.
+	 *
+	 * @param extension  the extension of the files written by the encoder
+	 * @param executable the name of the executable
+	 * @param arguments  the arguments, {@literal {in}} and {@literal {out}} are replaced with the source and target
+	 */
+	record ImageEncoder(String extension, String executable, String... arguments) {
+
+		boolean isAvailable() {
+			return Stream.of(System.getenv().getOrDefault("PATH", "").split(File.pathSeparator))
+				.filter(directory -> !directory.isBlank())
+				.map(directory -> Path.of(directory, executable))
+				.anyMatch(Files::isExecutable);
+		}
+
+		/**
+		 * Writes a variant of the given image. The variant is only kept if it is actually smaller than the original. As
+		 * the name of the image contains its fingerprint, an existing variant is always up-to-date.
+		 *
+		 * @param image the image to encode
+		 */
+		void encode(Path image) {
+
+			var name = image.getFileName().toString();
+			var target = image.resolveSibling(name.substring(0, name.lastIndexOf('.') + 1) + extension);
+			if (Files.exists(target)) {
+				return;
+			}
+			var command = new ArrayList<String>();
+			command.add(executable);
+			for (var argument : arguments) {
+				command.add(argument.replace("{in}", image.toString()).replace("{out}", target.toString()));
+			}
+			try {
+				var process = new ProcessBuilder(command).inheritIO().start();
+				if (process.waitFor() != 0) {
+					throw new IllegalStateException("Could not encode " + image + " with " + executable);
+				}
+				if (Files.size(target) >= Files.size(image)) {
+					Files.delete(target);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static final class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+		BestCompressionGZIPOutputStream(OutputStream out) throws IOException {
+			super(out);
+			def.setLevel(Deflater.BEST_COMPRESSION);
+		}
+	}
+
+	private AssetPipeline() {
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+
+/**
+ * Serves the fingerprinted assets directly from Vert.x: They are immutable, so they can be cached forever, and are
+ * transferred via {@code sendfile}. A precompressed gzip sibling is used when available and accepted. Images are served
+ * as AVIF or WebP instead when the {@link AssetPipeline} created such a variant and the client explicitly accepts it.
+ *
+ * @author Michael J. Simons
+ */
+@Singleton
+final class AssetRoutes {
+
+	static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	private static final Map<String, String> CONTENT_TYPES = Map.of(
+		"css", "text/css; charset=UTF-8",
+		"js", "text/javascript; charset=UTF-8",
+		"svg", "image/svg+xml",
+		"png", "image/png",
+		"jpg", "image/jpeg",
+		"jpeg", "image/jpeg",
+		"webp", "image/webp",
+		"avif", "image/avif"
+	);
+
+	private record Variant(String resource, String contentType) {
+	}
+
+	private record Asset(String resource, String gzipped, String contentType, List<Variant> variants) {
+	}
+
+	void registerRoutes(@Observes Router router) {
+
+		var classLoader = AssetRoutes.class.getClassLoader();
+		for (var url : Assets.manifest().values()) {
+			var resource = Assets.RESOURCES + url;
+			var gzipped = classLoader.getResource(resource + ".gz") == null ? null : resource + ".gz";
+			var contentType = CONTENT_TYPES.getOrDefault(extension(url), "application/octet-stream");
+			var variants = AssetPipeline.RASTER.contains(extension(url)) ? AssetPipeline.ENCODERS.stream()
+				.map(encoder -> resource.substring(0, resource.lastIndexOf('.') + 1) + encoder.extension())
+				.filter(variant -> classLoader.getResource(variant) != null)
+				.map(variant -> new Variant(variant, CONTENT_TYPES.get(extension(variant))))
+				.toList() : List.<Variant>of();
+			var asset = new Asset(resource, gzipped, contentType, variants);
+			router.get(url).order(-1).handler(ctx -> serve(ctx, asset));
+		}
+	}
+
+	private static String extension(String path) {
+		return path.substring(path.lastIndexOf('.') + 1);
+	}
+
+	private static void serve(RoutingContext ctx, Asset asset) {
+
+		var response = ctx.response().putHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+		if (!asset.variants().isEmpty()) {
+			response.putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			var accept = ctx.request().getHeader(HttpHeaders.ACCEPT);
+			for (var variant : asset.variants()) {
+				if (ContentCodings.acceptsMediaType(accept, variant.contentType())) {
+					response.putHeader(HttpHeaders.CONTENT_TYPE, variant.contentType()).sendFile(variant.resource());
+					return;
+				}
+			}
+		}
+
+		response.putHeader(HttpHeaders.CONTENT_TYPE, asset.contentType());
+		if (asset.gzipped() == null) {
+			response.sendFile(asset.resource());
+			return;
+		}
+
+		response.putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (ContentCodings.acceptsGzip(ctx.request().getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+			response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip").sendFile(asset.gzipped());
+		} else {
+			response.sendFile(asset.resource());
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import io.quarkus.qute.TemplateExtension;
+import io.quarkus.runtime.LaunchMode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Resolves the fingerprinted URLs of static assets created by the {@link AssetPipeline}. In templates, use
+ * {@code {asset:url('/css/simple.css')}}; all arguments are joined to the path of the asset. Paths without a
+ * fingerprinted version (and all paths in dev mode, where the pipeline doesn't run) are returned as is. The
+ * {@code srcset} of scaled images is available via {@code {asset:srcset('/img/tinna.jpg')}}.
+ *
+ * @author Michael J. Simons
+ */
+@TemplateExtension(namespace = "asset")
+public final class Assets {
+
+	static final String RESOURCES = "META-INF/resources";
+
+	static final String MANIFEST = "META-INF/assets.properties";
+
+	static final String SRCSETS = "META-INF/assets-srcset.properties";
+
+	private static final class Manifest {
+
+		static final Map<String, String> ENTRIES = load(MANIFEST);
+
+		static final Map<String, String> SRCSETS = load(Assets.SRCSETS);
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static Map<String, String> load(String resource) {
+			if (LaunchMode.current() == LaunchMode.DEVELOPMENT) {
+				return Map.of();
+			}
+			try (var in = Assets.class.getClassLoader().getResourceAsStream(resource)) {
+				if (in == null) {
+					return Map.of();
+				}
+				var properties = new Properties();
+				properties.load(in);
+				return Map.copyOf((Map) properties);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Resolves the URL of an asset.
+	 *
+	 * @param segments the segments of the path of the asset, joined without a separator
+	 * @return the URL of the fingerprinted asset if available, the joined path otherwise
+	 */
+	public static String url(String... segments) {
+		var path = join(segments);
+		return Manifest.ENTRIES.getOrDefault(path, path);
+	}
+
+	/**
+	 * Resolves the {@code srcset} of an image, listing the fingerprinted URLs of all its widths.
+	 *
+	 * @param segments the segments of the path of the image, joined without a separator
+	 * @return the {@code srcset} if the image has been scaled, the URL of the image otherwise
+	 */
+	public static String srcset(String... segments) {
+		var path = join(segments);
+		var srcset = Manifest.SRCSETS.get(path);
+		return srcset == null ? url(path) : srcset;
+	}
+
+	private static String join(String... segments) {
+		return segments.length == 1 ? segments[0] : String.join("", segments);
+	}
+
+	static Map<String, String> manifest() {
+		return Manifest.ENTRIES;
+	}
+
+	private Assets() {
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+/**
+ * Helper for content negotiation of content codings and media types.
+ *
+ * @author Michael J. Simons
+ */
+public final class ContentCodings {
+
+	/**
+	 * Checks whether the value of an {@literal Accept-Encoding} header allows gzip.
+	 *
+	 * @param acceptEncoding the header value, may be {@literal null}
+	 * @return {@literal true} if the client accepts gzip
+	 */
+	public static boolean acceptsGzip(String acceptEncoding) {
+		return accepts(acceptEncoding, "gzip", "*");
+	}
+
+	/**
+	 * Checks whether the value of an {@literal Accept} header explicitly lists the given media type. Wildcards are not
+	 * taken into account: Browsers send {@literal image/*} and {@literal *}{@literal /*} regardless of the formats they
+	 * can actually decode.
+	 *
+	 * @param accept    the header value, may be {@literal null}
+	 * @param mediaType the media type to check, without parameters
+	 * @return {@literal true} if the client accepts the media type
+	 */
+	public static boolean acceptsMediaType(String accept, String mediaType) {
+		return accepts(accept, mediaType, null);
+	}
+
+	/**
+	 * Evaluates all elements of the header: The first element listing the value explicitly takes precedence over the
+	 * wildcard, regardless of the order of the elements. The quality may be any of the parameters of an element.
+	 */
+	private static boolean accepts(String header, String value, String wildcard) {
+		if (header == null) {
+			return false;
+		}
+		var listed = false;
+		var accepted = false;
+		var acceptedByWildcard = false;
+		for (var element : header.split(",")) {
+			var parts = element.split(";");
+			var name = parts[0].trim();
+			if (value.equalsIgnoreCase(name)) {
+				accepted = listed ? accepted : !isZeroQuality(parts);
+				listed = true;
+			} else if (name.equals(wildcard)) {
+				acceptedByWildcard = acceptedByWildcard || !isZeroQuality(parts);
+			}
+		}
+		return listed ? accepted : acceptedByWildcard;
+	}
+
+	private static boolean isZeroQuality(String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			var parameter = parts[i].trim();
+			if (parameter.length() > 2 && parameter.regionMatches(true, 0, "q=", 0, 2)) {
+				try {
+					return Double.parseDouble(parameter.substring(2)) == 0.0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	private ContentCodings() {
+	}
+}
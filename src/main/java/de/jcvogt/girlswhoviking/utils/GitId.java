@@ -27,7 +27,7 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
  */
 @Named("gitId")
 @Singleton
-final class GitId {
+public final class GitId {
 
 	private static final String NA = "unbekannt";
 
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+import java.util.OptionalDouble;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class AdmissionControlTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final AtomicLong ticker = new AtomicLong(-Duration.ofHours(1).toNanos());
+
+	@Test
+	void shouldLimitTheRatePerClient() {
+
+		var admissionControl = new AdmissionControl(OptionalDouble.of(2.0), 3, 1024, registry, ticker::get);
+		for (int i = 0; i < 3; ++i) {
+			assertThat(admissionControl.admit("10.0.0.1")).isTrue();
+		}
+		assertThat(admissionControl.admit("10.0.0.1")).isFalse();
+		assertThat(admissionControl.admit("10.0.0.2")).isTrue();
+
+		ticker.addAndGet(Duration.ofMillis(500).toNanos());
+		assertThat(admissionControl.admit("10.0.0.1")).isTrue();
+		assertThat(admissionControl.admit("10.0.0.1")).isFalse();
+
+		ticker.addAndGet(Duration.ofMinutes(1).toNanos());
+		for (int i = 0; i < 3; ++i) {
+			assertThat(admissionControl.admit("10.0.0.1")).isTrue();
+		}
+		assertThat(admissionControl.retryAfterSeconds()).isOne();
+		assertThat(registry.get("quiz.admission.rejected").tag("cause", "rate").counter().count()).isEqualTo(2.0);
+	}
+
+	@Test
+	void shouldAdmitEverythingWithoutRate() {
+
+		var admissionControl = new AdmissionControl(OptionalDouble.empty(), 1, 1, registry, ticker::get);
+		for (int i = 0; i < 100; ++i) {
+			assertThat(admissionControl.admit("10.0.0.1")).isTrue();
+		}
+		assertThat(registry.get("quiz.admission.rejected").counter().count()).isZero();
+	}
+}
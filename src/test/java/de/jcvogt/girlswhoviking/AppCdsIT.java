@@ -0,0 +1,93 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Trains a dynamic AppCDS archive for the JVM build and records startup with and without it. The archive is dumped
+ * when the application exits after the index, quiz and result flows have been exercised against the dummy questions,
+ * so that it contains the classes needed to answer requests and not only those needed to boot. Runs with
+ * {@code ./mvnw verify -Pappcds}; the archive is written next to {@literal quarkus-run.jar}, the results to
+ * {@literal target/appcds-startup.json}.
+ * <p>
+ * Classes loaded by the Quarkus runner class loader can't be archived, so the archive mostly covers the JDK and the
+ * bootstrap of Quarkus. The difference is reported, not asserted, as it is in the range of the noise of a single run.
+ *
+ * @author Michael J. Simons
+ */
+class AppCdsIT {
+
+	private static final int RUNS = 3;
+
+	private static final Duration TRAINING = Duration.ofSeconds(5);
+
+	@Test
+	void shouldTrainAndCompareArchive() throws IOException, InterruptedException {
+
+		var archivePath = System.getProperty("appcds.archive.path");
+		Assumptions.assumeTrue(archivePath != null, "The archive is trained only in the appcds profile");
+		var jarPath = Path.of(System.getProperty("jvm.jar.path"));
+		Assumptions.assumeTrue(Files.isRegularFile(jarPath),
+			"The JVM build must be packaged before training the archive");
+		// The class path is part of the archive and must be given the same way as in the Procfile
+		var jar = Path.of("").toAbsolutePath().relativize(jarPath.toAbsolutePath()).toString();
+		var archive = Path.of(archivePath);
+		var java = ProcessHandle.current().info().command().orElse("java");
+
+		Files.deleteIfExists(archive);
+		try (var application = StartupMeasurement.start(List.of(java, "-XX:ArchiveClassesAtExit=" + archive,
+			"-Dgirlswhoviking.questions=dummy-questions.json", "-jar", jar))) {
+			train(application);
+		}
+		assertThat(archive).isRegularFile();
+
+		var withoutArchive = StartupMeasurement.measure("jvm", List.of(java, "-jar", jar), RUNS);
+		// Sharing is required, so that the application doesn't start at all if the archive doesn't match
+		var withArchive = StartupMeasurement.measure("jvm-appcds",
+			List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xshare:on", "-jar", jar), RUNS);
+		new ObjectMapper().writerWithDefaultPrettyPrinter()
+			.writeValue(Path.of(System.getProperty("startup.report.path")).toFile(),
+				Map.of("jvm", withoutArchive, "jvm-appcds", withArchive));
+	}
+
+	private static void train(StartupMeasurement.Application application) throws IOException, InterruptedException {
+
+		var client = HttpClient.newHttpClient();
+		for (var path : List.of("", "results/Tinna")) {
+			var response = client.send(HttpRequest.newBuilder(application.baseUri().resolve(path)).build(),
+				HttpResponse.BodyHandlers.discarding());
+			assertThat(response.statusCode()).isEqualTo(200);
+		}
+		var report = LoadGenerator.run(new LoadGenerator.Options(application.baseUri(), 4, TRAINING, Duration.ZERO));
+		assertThat(report.quizzes()).isPositive();
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class CompiledDefinitionTest {
+
+	private static final List<Quiz.Outcome> OUTCOMES = QuizFixtures.outcomes("a", "b", "c");
+
+	@Test
+	void shouldResolveIncrementsAndFallback() {
+
+		var definition = CompiledDefinition.of(new Quiz.Definition(OUTCOMES, List.of(
+			new Quiz.Question("1", List.of(new Quiz.Answer("x", List.of(2, 0)), new Quiz.Answer("y", List.of(0, 3)))),
+			new Quiz.Question("2", List.of(new Quiz.Answer("x", null), new Quiz.Answer("y", null),
+				new Quiz.Answer("z", null)))
+		))).validate();
+
+		var counts = new int[3];
+		definition.score(0, 1, counts);
+		assertThat(counts).containsExactly(0, 3, 0);
+		definition.score(1, 2, counts);
+		assertThat(counts).containsExactly(0, 3, 1);
+		definition.score(0, 0, counts);
+		assertThat(counts).containsExactly(2, 3, 1);
+	}
+
+	@Test
+	void shouldRejectAnswersThatCannotBeScored() {
+
+		var definition = CompiledDefinition.of(new Quiz.Definition(OUTCOMES.subList(0, 1), List.of(
+			new Quiz.Question("1", List.of(new Quiz.Answer("x", null), new Quiz.Answer("y", null)))
+		)));
+		assertThatIllegalArgumentException().isThrownBy(definition::validate)
+			.withMessage("Invalid definition: Answer 2 of question 1 cannot be scored");
+		assertThatIllegalStateException().isThrownBy(() -> definition.score(0, 1, new int[1]))
+			.withMessage("Answer 2 of question 1 cannot be scored");
+	}
+
+	@Test
+	void shouldSelectMaximum() {
+
+		assertThat(CompiledDefinition.selectOutcome(new int[] {1, 4, 2}, new Random())).isOne();
+		assertThat(CompiledDefinition.selectOutcome(new int[] {-1, -4}, new Random())).isZero();
+		assertThat(CompiledDefinition.selectOutcome(new int[0], new Random())).isEqualTo(-1);
+	}
+
+	@Test
+	void shouldSelectAmongTies() {
+
+		var random = new Random(4711);
+		var selected = new boolean[4];
+		for (int i = 0; i < 100; ++i) {
+			selected[CompiledDefinition.selectOutcome(new int[] {3, 1, 3, 3}, random)] = true;
+		}
+		assertThat(selected).containsExactly(true, false, true, true);
+	}
+
+	@Test
+	void shouldEvaluateCompleteQuizzes() {
+
+		var definition = CompiledDefinition.of(new Quiz.Definition(OUTCOMES, List.of(
+			new Quiz.Question("1", List.of(new Quiz.Answer("x", List.of(2, 0)), new Quiz.Answer("y", List.of(0, 3)))),
+			new Quiz.Question("2", List.of(new Quiz.Answer("x", null), new Quiz.Answer("y", null),
+				new Quiz.Answer("z", null)))
+		))).validate();
+
+		assertThat(definition.evaluate(new int[] {0, 2}, new Random())).isZero();
+		assertThat(definition.evaluate(new int[] {1, 2}, new Random())).isOne();
+		assertThatIllegalArgumentException().isThrownBy(() -> definition.evaluate(new int[] {0}, new Random()))
+			.withMessage("Expected 2 answers, got 1");
+		assertThatIllegalArgumentException().isThrownBy(() -> definition.evaluate(new int[] {0, 3}, new Random()))
+			.withMessage("Illegal answer (3) to question 2");
+		assertThat(CompiledDefinition.of(new Quiz.Definition(OUTCOMES, List.of())).evaluate(new int[0], new Random()))
+			.isEqualTo(-1);
+	}
+
+	@Test
+	void shouldDecideOutcomesOnlyWhenOutOfReach() {
+
+		var definition = CompiledDefinition.of(new Quiz.Definition(OUTCOMES, List.of(
+			new Quiz.Question("1", List.of(new Quiz.Answer("x", List.of(3, 0)), new Quiz.Answer("y", List.of(0, 1)))),
+			new Quiz.Question("2", List.of(new Quiz.Answer("x", List.of(-1, 1)), new Quiz.Answer("y", List.of(0, 0)))),
+			new Quiz.Question("3", List.of(new Quiz.Answer("x", null), new Quiz.Answer("y", null),
+				new Quiz.Answer("z", null)))
+		))).validate();
+
+		assertThat(definition.decidedOutcome(1, new int[] {4, 0, 0})).isZero();
+		assertThat(definition.decidedOutcome(1, new int[] {3, 0, 0})).isEqualTo(-1);
+		assertThat(definition.decidedOutcome(1, new int[] {0, 1, 0})).isEqualTo(-1);
+		assertThat(definition.decidedOutcome(2, new int[] {2, 1, 0})).isEqualTo(-1);
+		assertThat(definition.decidedOutcome(3, new int[] {2, 1, 1})).isZero();
+		assertThat(definition.decidedOutcome(3, new int[] {2, 2, 1})).isEqualTo(-1);
+
+		// Every outcome decided early must be the outcome of every possible completion
+		for (int a = 0; a < 2; ++a) {
+			for (int b = 0; b < 2; ++b) {
+				for (int c = 0; c < 3; ++c) {
+					var answers = new int[] {a, b, c};
+					var counts = new int[3];
+					for (int q = 0; q < answers.length; ++q) {
+						definition.score(q, answers[q], counts);
+						var decided = definition.decidedOutcome(q + 1, counts);
+						if (decided >= 0) {
+							assertThat(definition.evaluate(answers, new Random())).isEqualTo(decided);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void shouldFindResultsByName() {
+
+		var definition = CompiledDefinition.of(new Quiz.Definition(OUTCOMES, List.of()));
+
+		assertThat(definition.result("b")).containsSame(OUTCOMES.get(1));
+		assertThat(definition.result("d")).isEmpty();
+	}
+
+	@Test
+	void shouldPrecomputeAllOrdersOfSmallQuestions() {
+
+		var permutations = CompiledDefinition.permutations(3, 0);
+
+		assertThat(permutations).containsExactly(List.of(0, 1, 2), List.of(0, 2, 1), List.of(1, 0, 2), List.of(1, 2, 0),
+			List.of(2, 0, 1), List.of(2, 1, 0));
+		assertThat(CompiledDefinition.permutations(0, 0)).containsExactly(List.of());
+	}
+
+	@Test
+	void shouldPrecomputeStableOrdersOfLargeQuestions() {
+
+		var permutations = CompiledDefinition.permutations(6, 4);
+
+		assertThat(permutations).hasSize(CompiledDefinition.MAX_PERMUTATIONS)
+			.allSatisfy(p -> assertThat(p).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5))
+			.isEqualTo(CompiledDefinition.permutations(6, 4));
+		assertThat(permutations.stream().distinct().count()).isGreaterThan(1);
+	}
+
+	@Test
+	void shouldDeriveOrdersAndTieBreaksFromSeed() {
+
+		var definition = CompiledDefinition.of(new Quiz.Definition(OUTCOMES, List.of(
+			new Quiz.Question("1", List.of(new Quiz.Answer("x", null), new Quiz.Answer("y", null),
+				new Quiz.Answer("z", null)))
+		)));
+
+		assertThat(definition.permutation(0, 4711)).isSameAs(definition.permutation(0, 4711));
+		assertThat(definition.preview(4711)).isSameAs(definition.preview(4711));
+		assertThat(CompiledDefinition.selectOutcome(new int[] {3, 1, 3, 3}, 4711))
+			.isEqualTo(CompiledDefinition.selectOutcome(new int[] {3, 1, 3, 3}, 4711))
+			.isNotEqualTo(1);
+
+		var orders = new HashSet<List<Integer>>();
+		var selected = new boolean[4];
+		for (int seed = 0; seed < 100; ++seed) {
+			orders.add(definition.permutation(0, seed));
+			selected[CompiledDefinition.selectOutcome(new int[] {3, 1, 3, 3}, seed)] = true;
+		}
+		assertThat(orders).hasSize(6);
+		assertThat(selected).containsExactly(true, false, true, true);
+	}
+}
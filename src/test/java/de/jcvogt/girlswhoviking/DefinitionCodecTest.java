@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * @author Michael J. Simons
+ */
+class DefinitionCodecTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void shouldRoundTripDefinitions(@TempDir Path classes) throws IOException {
+
+		try (InputStream in = DefinitionCodecTest.class.getClassLoader().getResourceAsStream("dummy-questions.json")) {
+			Files.copy(in, classes.resolve("dummy-questions.json"));
+		}
+
+		var binary = DefinitionCodec.compile(objectMapper, classes, "dummy-questions.json");
+		assertThat(binary.getFileName()).hasToString("dummy-questions.bin");
+
+		var expected = objectMapper.readValue(classes.resolve("dummy-questions.json").toFile(), Quiz.Definition.class);
+		var definition = DefinitionCodec.decode(Files.readAllBytes(binary));
+		assertThat(definition).isEqualTo(expected);
+		assertThat(definition.outcomes()).anyMatch(outcome -> outcome.optionalLink() == null);
+		assertThat(CompiledDefinition.of(definition).version()).isEqualTo(CompiledDefinition.of(expected).version());
+
+		var compiled = Files.readAllBytes(binary);
+		var source = Files.readAllBytes(classes.resolve("dummy-questions.json"));
+		assertThat(DefinitionCodec.isCompiledFrom(compiled, source)).isTrue();
+		assertThat(DefinitionCodec.isCompiledFrom(compiled, "{}".getBytes(StandardCharsets.UTF_8))).isFalse();
+	}
+
+	@Test
+	void shouldRejectInvalidDefinitions(@TempDir Path classes) throws IOException {
+
+		Files.writeString(classes.resolve("malformed.json"), "{\"outcomes\": [}");
+		assertThatExceptionOfType(JsonProcessingException.class)
+			.isThrownBy(() -> DefinitionCodec.compile(objectMapper, classes, "malformed.json"));
+
+		Files.writeString(classes.resolve("unknown.json"), "{\"outcomes\": [], \"questionz\": []}");
+		assertThatExceptionOfType(JsonProcessingException.class)
+			.isThrownBy(() -> DefinitionCodec.compile(objectMapper, classes, "unknown.json"));
+
+		Files.writeString(classes.resolve("invalid.json"), """
+			{"outcomes": [{"name": "a"}], "questions": [{"value": "q", "answers": [{"value": "x"}, {"value": "y"}]}]}""");
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> DefinitionCodec.compile(objectMapper, classes, "invalid.json"))
+			.withMessage("invalid.json: Invalid definition: Answer 2 of question 1 cannot be scored");
+		assertThat(classes.resolve("invalid.bin")).doesNotExist();
+	}
+
+	@Test
+	void shouldRejectUnknownFormats() {
+
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> DefinitionCodec.decode(new byte[] {0, 0, 0, 0, 1}))
+			.withMessage("Unsupported definition format.");
+	}
+}
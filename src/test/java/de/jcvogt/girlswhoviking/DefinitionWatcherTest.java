@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Michael J. Simons
+ */
+class DefinitionWatcherTest {
+
+	@Test
+	void shouldNotifyAboutChangesOfTheWatchedFile(@TempDir Path directory) throws IOException, InterruptedException {
+
+		var file = directory.resolve("questions.json");
+		Files.writeString(file, "{}");
+
+		var changes = new Semaphore(0);
+		try (var watcher = DefinitionWatcher.start(file, changes::release)) {
+			Files.writeString(directory.resolve("other.json"), "{}");
+			assertThat(changes.tryAcquire(2, TimeUnit.SECONDS)).isFalse();
+
+			Files.writeString(file, "{\"outcomes\": []}");
+			assertThat(changes.tryAcquire(30, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class DefinitionsTest {
+
+	private static CompiledDefinition definition(String question) {
+		return CompiledDefinition.of(new Quiz.Definition(
+			QuizFixtures.outcomes("a"),
+			List.of(new Quiz.Question(question, List.of(new Quiz.Answer("x", List.of(1)))))
+		));
+	}
+
+	@Test
+	void shouldActivateNewVersions() {
+
+		var initial = definition("1");
+		var definitions = new Definitions(initial);
+		assertThat(definitions.current()).isSameAs(initial);
+		assertThat(definitions.activate(definition("1"))).isFalse();
+		assertThat(definitions.current()).isSameAs(initial);
+
+		var next = definition("2");
+		assertThat(definitions.activate(next)).isTrue();
+		assertThat(definitions.current()).isSameAs(next);
+		assertThat(definitions.get(initial.version())).containsSame(initial);
+		assertThat(definitions.get(next.version())).containsSame(next);
+		assertThat(definitions.get("unknown")).isEmpty();
+	}
+
+	@Test
+	void shouldOnlyKeepRecentVersions() {
+
+		var all = new ArrayList<CompiledDefinition>();
+		all.add(definition("0"));
+		var definitions = new Definitions(all.get(0));
+		for (int i = 1; i <= Definitions.MAX_VERSIONS; i++) {
+			all.add(definition(Integer.toString(i)));
+			definitions.activate(all.get(i));
+		}
+
+		assertThat(definitions.get(all.get(0).version())).isEmpty();
+		assertThat(all.subList(1, all.size())).allMatch(d -> definitions.get(d.version()).isPresent());
+	}
+}
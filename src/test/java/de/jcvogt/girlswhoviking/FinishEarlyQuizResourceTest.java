@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+@TestProfile(FinishEarlyQuizResourceTest.FinishEarly.class)
+class FinishEarlyQuizResourceTest {
+
+	/**
+	 * Finishes quizzes as soon as their outcome is decided.
+	 */
+	public static class FinishEarly implements QuarkusTestProfile {
+
+		@Override
+		public Map<String, String> getConfigOverrides() {
+			return Map.of("girlswhoviking.finish-early.enabled", "true");
+		}
+	}
+
+	@Test
+	void shouldShowTheResultOnceItIsDecided() {
+
+		var sessionId = RestAssured.given()
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.extract().cookie(ManagedQuizStore.COOKIE_NAME);
+
+		for (int i = 1; i <= 2; ++i) {
+			RestAssured.given()
+				.redirects().follow(false)
+				.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+				.formParam("question", i)
+				.formParam("selectedAnswer", 0)
+				.when().post("/answer")
+				.then()
+				.statusCode(303)
+				.header("Location", endsWith(i == 2 ? "/result" : "/start"));
+		}
+
+		RestAssured.given()
+			.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+			.when().get("/result")
+			.then()
+			.statusCode(200)
+			.body(containsString("Du bist <strong>Tinna</strong>"));
+	}
+}
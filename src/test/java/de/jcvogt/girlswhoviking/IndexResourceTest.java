@@ -16,10 +16,13 @@
 package de.jcvogt.girlswhoviking;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 
 import io.quarkus.test.common.http.TestHTTPEndpoint;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.RestAssured;
+import io.restassured.config.DecoderConfig;
 
 import org.junit.jupiter.api.Test;
 
@@ -42,4 +45,44 @@ public class IndexResourceTest {
 			.statusCode(200)
 			.body(containsString(expected));
 	}
+
+	@Test
+	public void shouldServeCompressedPages() {
+		RestAssured.given()
+			.header("Accept-Encoding", "gzip")
+			.when().get("/")
+			.then()
+			.statusCode(200)
+			.header("Content-Encoding", "gzip")
+			.header("Content-Type", containsString("charset=UTF-8"))
+			.body(containsString("Welche Schildmaid bist Du?"));
+	}
+
+	@Test
+	public void shouldAnswerConditionalRequests() {
+		var etag = RestAssured.given()
+			.header("Accept-Encoding", "gzip")
+			.when().get("/")
+			.then()
+			.statusCode(200)
+			.header("Cache-Control", containsString("public"))
+			.header("Last-Modified", nullValue())
+			.extract().header("ETag");
+
+		RestAssured.given()
+			.header("If-None-Match", etag)
+			.header("Accept-Encoding", "gzip")
+			.when().get("/")
+			.then()
+			.statusCode(304)
+			.header("ETag", etag);
+
+		RestAssured.given()
+			.config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+			.header("If-None-Match", etag)
+			.when().get("/")
+			.then()
+			.statusCode(200)
+			.header("ETag", not(etag));
+	}
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Drives a running application like a crowd of visitors: Each simulated user starts a quiz without a cookie, picks a
+ * random answer for every question, follows the {@literal 303} redirects and finally fetches the result, then starts
+ * over as a new visitor. Cookies are handled by the users themselves, so that the generator works with both the
+ * managed and the token store. After the run, heap usage and the number of live quizzes are scraped from the
+ * Prometheus endpoint.
+ * <p>
+ * Latencies of requests sent during the warmup are not recorded. The generator needs nothing but the JDK and a
+ * reachable application, so it runs offline.
+ *
+ * @author Michael J. Simons
+ */
+final class LoadGenerator {
+
+	private static final Pattern ANSWER = Pattern.compile("name=\"selectedAnswer\" type=\"radio\" value=\"(\\d+)\"");
+
+	private static final Pattern QUESTION = Pattern.compile("name=\"question\" type=\"hidden\" value=\"(\\d+)\"");
+
+	private static final Pattern HEAP_USED =
+		Pattern.compile("(?m)^jvm_memory_used_bytes\\{[^}]*area=\"heap\"[^}]*} (\\S+)$");
+
+	private static final Pattern LIVE_SESSIONS = Pattern.compile("(?m)^quiz_sessions_live(?:\\{[^}]*})? (\\S+)$");
+
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+	/**
+	 * Configures a run.
+	 *
+	 * @param baseUri  the base uri of the application, ending with a slash
+	 * @param users    the number of concurrent users
+	 * @param duration the time during which latencies are recorded
+	 * @param warmup   the time before recording starts
+	 */
+	record Options(URI baseUri, int users, Duration duration, Duration warmup) {
+	}
+
+	/**
+	 * Latency distribution of a group of requests.
+	 *
+	 * @param count      the number of requests
+	 * @param p50Millis  the median
+	 * @param p90Millis  the 90th percentile
+	 * @param p99Millis  the 99th percentile
+	 * @param maxMillis  the slowest request
+	 */
+	record Latencies(int count, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+
+		static Latencies of(long[] nanos, int count) {
+			var sorted = Arrays.copyOf(nanos, count);
+			Arrays.sort(sorted);
+			return new Latencies(count, percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+				count == 0 ? 0.0 : millis(sorted[count - 1]));
+		}
+
+		private static double percentile(long[] sorted, double percentile) {
+			return sorted.length == 0 ? 0.0 : millis(sorted[(int) Math.ceil(percentile * sorted.length) - 1]);
+		}
+
+		private static double millis(long nanos) {
+			return nanos / 1_000_000.0;
+		}
+	}
+
+	/**
+	 * The outcome of a run.
+	 *
+	 * @param users             the number of concurrent users
+	 * @param durationMillis    the time during which latencies have been recorded
+	 * @param requests          the number of recorded requests
+	 * @param requestsPerSecond recorded requests per second
+	 * @param quizzes           the number of quizzes finished while recording
+	 * @param errors            the number of failed requests and unexpected responses while recording
+	 * @param overall           the latencies of all requests
+	 * @param endpoints         the latencies by endpoint
+	 * @param heapUsedBytes     the heap used by the application after the run, {@literal -1} if not published
+	 * @param liveSessions      the number of quizzes kept by the application after the run, {@literal -1} if not
+	 *                          published
+	 */
+	record Report(int users, long durationMillis, int requests, double requestsPerSecond, int quizzes, int errors,
+		Latencies overall, Map<String, Latencies> endpoints, long heapUsedBytes, long liveSessions) {
+	}
+
+	enum Endpoint {
+		START, ANSWER, RESULT
+	}
+
+	/**
+	 * Latencies recorded by one user, not shared between threads until the user has finished.
+	 */
+	private static final class Recorder {
+
+		final long[][] nanos = new long[Endpoint.values().length][1024];
+
+		final int[] counts = new int[Endpoint.values().length];
+
+		int quizzes;
+
+		int errors;
+
+		void record(Endpoint endpoint, long latency) {
+			var i = endpoint.ordinal();
+			if (counts[i] == nanos[i].length) {
+				nanos[i] = Arrays.copyOf(nanos[i], counts[i] * 2);
+			}
+			nanos[i][counts[i]++] = latency;
+		}
+	}
+
+	/**
+	 * Runs the configured load and blocks until it has finished.
+	 *
+	 * @param options the configuration of the run
+	 * @return the report of the run
+	 */
+	static Report run(Options options) {
+
+		var client = HttpClient.newBuilder()
+			.followRedirects(HttpClient.Redirect.NEVER)
+			.connectTimeout(REQUEST_TIMEOUT)
+			.build();
+
+		var now = System.nanoTime();
+		var recordFrom = now + options.warmup().toNanos();
+		var end = recordFrom + options.duration().toNanos();
+		var recorders = new ArrayList<Recorder>();
+		var threads = new ArrayList<Thread>();
+		for (int i = 0; i < options.users(); ++i) {
+			var recorder = new Recorder();
+			var thread = new Thread(
+				() -> simulate(client, options.baseUri(), recorder, recordFrom, end), "load-user-" + i);
+			recorders.add(recorder);
+			threads.add(thread);
+			thread.start();
+		}
+		try {
+			for (var thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+
+		var endpoints = new LinkedHashMap<String, Latencies>();
+		var all = new long[0];
+		var requests = 0;
+		for (var endpoint : Endpoint.values()) {
+			var i = endpoint.ordinal();
+			var count = recorders.stream().mapToInt(r -> r.counts[i]).sum();
+			var nanos = new long[count];
+			var offset = 0;
+			for (var recorder : recorders) {
+				System.arraycopy(recorder.nanos[i], 0, nanos, offset, recorder.counts[i]);
+				offset += recorder.counts[i];
+			}
+			endpoints.put(endpoint.name().toLowerCase(), Latencies.of(nanos, count));
+			all = Arrays.copyOf(all, requests + count);
+			System.arraycopy(nanos, 0, all, requests, count);
+			requests += count;
+		}
+
+		var metrics = scrapeMetrics(client, options.baseUri());
+		var durationMillis = options.duration().toMillis();
+		return new Report(options.users(), durationMillis, requests, requests * 1000.0 / durationMillis,
+			recorders.stream().mapToInt(r -> r.quizzes).sum(), recorders.stream().mapToInt(r -> r.errors).sum(),
+			Latencies.of(all, requests), endpoints,
+			(long) sum(HEAP_USED, metrics), (long) sum(LIVE_SESSIONS, metrics));
+	}
+
+	private static void simulate(HttpClient client, URI baseUri, Recorder recorder, long recordFrom, long end) {
+
+		while (System.nanoTime() - end < 0) {
+			var cookies = new LinkedHashMap<String, String>();
+			try {
+				if (takeQuiz(client, baseUri, cookies, recorder, recordFrom) && System.nanoTime() - recordFrom >= 0) {
+					++recorder.quizzes;
+				}
+			} catch (IOException | RuntimeException e) {
+				if (System.nanoTime() - recordFrom >= 0) {
+					++recorder.errors;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private static boolean takeQuiz(HttpClient client, URI baseUri, Map<String, String> cookies, Recorder recorder,
+		long recordFrom) throws IOException, InterruptedException {
+
+		var page = send(client, Endpoint.START, get(baseUri.resolve("start"), cookies), cookies, recorder, recordFrom);
+		while (true) {
+			if (page.statusCode() != 200) {
+				return failed(recorder, recordFrom);
+			}
+			var answers = ANSWER.matcher(page.body()).results().map(r -> r.group(1)).toList();
+			if (answers.isEmpty()) {
+				return failed(recorder, recordFrom);
+			}
+			var form = "selectedAnswer=" + answers.get(ThreadLocalRandom.current().nextInt(answers.size()));
+			var question = QUESTION.matcher(page.body());
+			if (question.find()) {
+				form += "&question=" + question.group(1);
+			}
+			var post = request(baseUri.resolve("answer"), cookies)
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form))
+				.build();
+			var redirect = send(client, Endpoint.ANSWER, post, cookies, recorder, recordFrom);
+			var location = redirect.headers().firstValue("Location").orElse(null);
+			if (redirect.statusCode() != 303 || location == null) {
+				return failed(recorder, recordFrom);
+			}
+			var target = baseUri.resolve(location);
+			if (target.getPath().endsWith("/result")) {
+				var result = send(client, Endpoint.RESULT, get(target, cookies), cookies, recorder, recordFrom);
+				return result.statusCode() == 200 || failed(recorder, recordFrom);
+			}
+			page = send(client, Endpoint.START, get(target, cookies), cookies, recorder, recordFrom);
+		}
+	}
+
+	private static HttpResponse<String> send(HttpClient client, Endpoint endpoint, HttpRequest request,
+		Map<String, String> cookies, Recorder recorder, long recordFrom) throws IOException, InterruptedException {
+
+		var start = System.nanoTime();
+		var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+		var stop = System.nanoTime();
+		if (start - recordFrom >= 0) {
+			recorder.record(endpoint, stop - start);
+		}
+		for (var setCookie : response.headers().allValues("Set-Cookie")) {
+			var nameValue = setCookie.split(";", 2)[0];
+			var separator = nameValue.indexOf('=');
+			if (separator > 0) {
+				cookies.put(nameValue.substring(0, separator).trim(), nameValue.substring(separator + 1).trim());
+			}
+		}
+		return response;
+	}
+
+	private static boolean failed(Recorder recorder, long recordFrom) {
+		if (System.nanoTime() - recordFrom >= 0) {
+			++recorder.errors;
+		}
+		return false;
+	}
+
+	private static HttpRequest get(URI uri, Map<String, String> cookies) {
+		return request(uri, cookies).GET().build();
+	}
+
+	private static HttpRequest.Builder request(URI uri, Map<String, String> cookies) {
+		var builder = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT);
+		if (!cookies.isEmpty()) {
+			builder.header("Cookie", cookies.entrySet().stream()
+				.map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+				.collect(Collectors.joining("; ")));
+		}
+		return builder;
+	}
+
+	private static String scrapeMetrics(HttpClient client, URI baseUri) {
+		try {
+			var response = client.send(
+				HttpRequest.newBuilder(baseUri.resolve("q/metrics")).timeout(REQUEST_TIMEOUT).build(),
+				HttpResponse.BodyHandlers.ofString());
+			return response.statusCode() == 200 ? response.body() : "";
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static double sum(Pattern pattern, String metrics) {
+		List<Double> values = pattern.matcher(metrics).results().map(r -> Double.parseDouble(r.group(1))).toList();
+		return values.isEmpty() ? -1 : values.stream().mapToDouble(Double::doubleValue).sum();
+	}
+
+	private LoadGenerator() {
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+
+import java.net.URI;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+class LoadGeneratorTest {
+
+	@TestHTTPResource("/")
+	URI baseUri;
+
+	@Test
+	void shouldTakeQuizzesEndToEnd() {
+
+		var report = LoadGenerator.run(new LoadGenerator.Options(baseUri, 4, Duration.ofSeconds(1), Duration.ofMillis(200)));
+
+		assertThat(report.errors()).isZero();
+		assertThat(report.quizzes()).isPositive();
+		assertThat(report.endpoints()).containsOnlyKeys("start", "answer", "result");
+		assertThat(report.endpoints().get("answer").count()).isGreaterThanOrEqualTo(report.endpoints().get("result").count());
+		assertThat(report.overall().p50Millis()).isLessThanOrEqualTo(report.overall().p99Millis());
+		assertThat(report.liveSessions()).isPositive();
+		assertThat(report.heapUsedBytes()).isPositive();
+	}
+
+	@Test
+	void shouldComputePercentiles() {
+
+		var latencies = LoadGenerator.Latencies.of(new long[] {4_000_000, 1_000_000, 3_000_000, 2_000_000, 0}, 4);
+
+		assertThat(latencies.count()).isEqualTo(4);
+		assertThat(latencies.p50Millis()).isEqualTo(2.0);
+		assertThat(latencies.p90Millis()).isEqualTo(4.0);
+		assertThat(latencies.maxMillis()).isEqualTo(4.0);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Puts the packaged JVM build under load with concurrent users taking the quiz end to end. Runs with
+ * {@code ./mvnw verify -Pload}, users, duration and warmup can be changed with {@literal -Dload.users},
+ * {@literal -Dload.duration} and {@literal -Dload.warmup} (ISO-8601 durations). The report is written to
+ * {@literal target/load-report.json}.
+ *
+ * @author Michael J. Simons
+ */
+class LoadIT {
+
+	@Test
+	void shouldServeConcurrentUsersWithoutErrors() throws IOException {
+
+		var reportPath = System.getProperty("load.report.path");
+		Assumptions.assumeTrue(reportPath != null, "The load test runs only in the load profile");
+		var jar = Path.of(System.getProperty("jvm.jar.path"));
+		Assumptions.assumeTrue(Files.isRegularFile(jar), "The JVM build must be packaged before it can be put under load");
+
+		var command = List.of(ProcessHandle.current().info().command().orElse("java"), "-jar", jar.toString());
+		LoadGenerator.Report report;
+		try (var application = StartupMeasurement.start(command)) {
+			report = LoadGenerator.run(new LoadGenerator.Options(application.baseUri(),
+				Integer.getInteger("load.users", 50),
+				Duration.parse(System.getProperty("load.duration", "PT30S")),
+				Duration.parse(System.getProperty("load.warmup", "PT10S"))));
+		}
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(Path.of(reportPath).toFile(), report);
+
+		assertThat(report.errors()).isZero();
+		assertThat(report.quizzes()).isPositive();
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.reactive.server.jaxrs.HttpHeadersImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Michael J. Simons
+ */
+class ManagedQuizStoreTest {
+
+	private final CompiledDefinition definition = CompiledDefinition.of(QuizFixtures.definition("1"));
+
+	private final Definitions definitions = new Definitions(definition);
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final AtomicLong ticker = new AtomicLong();
+
+	@Test
+	void shouldKeepQuizzesByCookie() {
+
+		var store = new ManagedQuizStore(10, Duration.ofMinutes(1), registry, ticker::get);
+		var quiz = store.load(definitions, headers(null));
+		var id = sessionId(store.save(definitions, quiz, Response.ok()));
+		assertThat(id).hasSize(22);
+
+		assertThat(store.load(definitions, headers(id))).isSameAs(quiz);
+		assertThat(store.save(definitions, quiz, Response.ok()).build().getCookies()).isEmpty();
+		assertThat(store.load(definitions, headers("unknown"))).isNotSameAs(quiz);
+
+		assertThat(registry.get("quiz.sessions.live").gauge().value()).isEqualTo(2.0);
+		assertThat(registry.get("quiz.sessions.created").counter().count()).isEqualTo(2.0);
+		assertThat(registry.get("quiz.sessions.memory").gauge().value())
+			.isEqualTo(2.0 * ManagedQuizStore.estimateSessionSize(2, 1));
+	}
+
+	@Test
+	void shouldEvictIdleQuizzes() {
+
+		var store = new ManagedQuizStore(10, Duration.ofSeconds(30), registry, ticker::get);
+		var first = store.load(definitions, headers(null));
+		var id = sessionId(store.save(definitions, first, Response.ok()));
+		store.save(definitions, store.load(definitions, headers(null)), Response.ok());
+
+		ticker.addAndGet(Duration.ofSeconds(31).toNanos());
+		assertThat(store.load(definitions, headers(id))).isNotSameAs(first);
+		assertThat(store.size()).isOne();
+		assertThat(registry.get("quiz.sessions.evicted").tag("cause", "idle").counter().count()).isEqualTo(2.0);
+	}
+
+	@Test
+	void shouldEvictLeastRecentlyUsedQuizzesWhenFull() {
+
+		var store = new ManagedQuizStore(2, Duration.ofMinutes(1), registry, ticker::get);
+		var first = store.load(definitions, headers(null));
+		var firstId = sessionId(store.save(definitions, first, Response.ok()));
+		var second = store.load(definitions, headers(null));
+		var secondId = sessionId(store.save(definitions, second, Response.ok()));
+
+		store.load(definitions, headers(firstId));
+		store.save(definitions, store.load(definitions, headers(null)), Response.ok());
+
+		assertThat(store.size()).isEqualTo(2);
+		assertThat(store.load(definitions, headers(firstId))).isSameAs(first);
+		assertThat(store.load(definitions, headers(secondId))).isNotSameAs(second);
+		assertThat(registry.get("quiz.sessions.evicted").tag("cause", "capacity").counter().count()).isEqualTo(2.0);
+	}
+
+	@Test
+	void shouldMoveRestartedQuizzesToTheCurrentDefinition() {
+
+		var store = new ManagedQuizStore(10, Duration.ofMinutes(1), registry, ticker::get);
+		var quiz = store.load(definitions, headers(null));
+		var id = sessionId(store.save(definitions, quiz, Response.ok()));
+		quiz.evaluate(0);
+
+		assertThat(store.restart(definitions, quiz, headers(id))).isSameAs(quiz);
+		assertThat(quiz.getState().idx()).isZero();
+
+		var newDefinition = CompiledDefinition.of(QuizFixtures.definition("2"));
+		definitions.activate(newDefinition);
+		assertThat(store.load(definitions, headers(id))).isSameAs(quiz);
+
+		var restarted = store.restart(definitions, quiz, headers(id));
+		assertThat(restarted.getCompiledDefinition()).isSameAs(newDefinition);
+		assertThat(store.load(definitions, headers(id))).isSameAs(restarted);
+		assertThat(store.save(definitions, restarted, Response.ok()).build().getCookies()).isEmpty();
+	}
+
+	@Test
+	void shouldKeepHostedQuizzesApart() {
+
+		var store = new ManagedQuizStore(10, Duration.ofMinutes(1), registry, ticker::get);
+		var hosted = new Definitions("other", definition);
+		var quiz = store.load(definitions, headers(null));
+		var id = sessionId(store.save(definitions, quiz, Response.ok()));
+
+		var hostedCookie = hosted.cookieName(ManagedQuizStore.COOKIE_NAME);
+		assertThat(hostedCookie).isEqualTo("quiz-session-other");
+		assertThat(store.load(hosted, headers(hostedCookie, id))).isNotSameAs(quiz);
+		var hostedQuiz = store.load(hosted, headers(null));
+		var hostedId = sessionId(hostedCookie, store.save(hosted, hostedQuiz, Response.ok()));
+		assertThat(store.load(hosted, headers(hostedCookie, hostedId))).isSameAs(hostedQuiz);
+		assertThat(store.load(definitions, headers(hostedId))).isNotSameAs(hostedQuiz);
+		assertThat(store.load(definitions, headers(id))).isSameAs(quiz);
+	}
+
+	@Test
+	void shouldRestoreSnapshots(@TempDir Path directory) throws IOException {
+
+		var store = new ManagedQuizStore(10, Duration.ofMinutes(1), registry, ticker::get);
+		var quiz = store.load(definitions, headers(null));
+		var id = sessionId(store.save(definitions, quiz, Response.ok()));
+		quiz.evaluate(1);
+		var idle = store.load(definitions, headers(null));
+		store.save(definitions, idle, Response.ok());
+		ticker.addAndGet(Duration.ofSeconds(50).toNanos());
+		store.load(definitions, headers(id));
+		ticker.addAndGet(Duration.ofSeconds(20).toNanos());
+
+		var file = directory.resolve("sessions.bin");
+		assertThat(store.snapshot(file)).isOne();
+
+		var restoredRegistry = new SimpleMeterRegistry();
+		var restoredStore = new ManagedQuizStore(10, Duration.ofMinutes(1), restoredRegistry, ticker::get);
+		var hosted = new Definitions("other", definition);
+		assertThat(restoredStore.restore(file, quizId -> quizId.isEmpty() ? Optional.of(definitions) : Optional.of(hosted)))
+			.isOne();
+		assertThat(file).doesNotExist();
+
+		var restored = restoredStore.load(definitions, headers(id));
+		assertThat(restored.getState().idx()).isOne();
+		assertThat(restored.getState().counts()).containsExactly(0, 1);
+		assertThat(restored.getState().seed()).isEqualTo(quiz.getState().seed());
+		assertThat(restoredStore.save(definitions, restored, Response.ok()).build().getCookies()).isEmpty();
+		assertThat(restoredRegistry.get("quiz.sessions.restored").counter().count()).isOne();
+	}
+
+	@Test
+	void shouldIgnoreCorruptSnapshots(@TempDir Path directory) throws IOException {
+
+		var store = new ManagedQuizStore(10, Duration.ofMinutes(1), registry, ticker::get);
+		store.save(definitions, store.load(definitions, headers(null)), Response.ok());
+		var file = directory.resolve("sessions.bin");
+		store.snapshot(file);
+		var bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+
+		var restoredStore = new ManagedQuizStore(10, Duration.ofMinutes(1), new SimpleMeterRegistry(), ticker::get);
+		assertThat(restoredStore.restore(file, quizId -> Optional.of(definitions))).isZero();
+		assertThat(restoredStore.size()).isZero();
+		assertThat(restoredStore.restore(directory.resolve("missing.bin"), quizId -> Optional.of(definitions))).isZero();
+	}
+
+	private static HttpHeaders headers(String sessionId) {
+		return headers(ManagedQuizStore.COOKIE_NAME, sessionId);
+	}
+
+	private static HttpHeaders headers(String cookieName, String sessionId) {
+		return new HttpHeadersImpl(sessionId == null ? List.of() : List.of(
+			Map.entry(HttpHeaders.COOKIE, cookieName + "=" + sessionId)));
+	}
+
+	private static String sessionId(Response.ResponseBuilder response) {
+		return sessionId(ManagedQuizStore.COOKIE_NAME, response);
+	}
+
+	private static String sessionId(String cookieName, Response.ResponseBuilder response) {
+		return response.build().getCookies().get(cookieName).getValue();
+	}
+}
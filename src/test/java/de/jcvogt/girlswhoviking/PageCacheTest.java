@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.inject.Inject;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+class PageCacheTest {
+
+	@Inject
+	PageCache pageCache;
+
+	@Inject
+	QuizService quizService;
+
+	@Test
+	void shouldCacheResultPages() throws IOException {
+
+		var outcome = quizService.getDefinition().outcomes().get(0);
+		var page = pageCache.resultPage("/", outcome);
+		assertThat(pageCache.resultPage("/", outcome)).isSameAs(page);
+
+		var html = new String(page.utf8(), StandardCharsets.UTF_8);
+		assertThat(html).contains("Du bist <strong>Dineke</strong>, die Navigatorin");
+		try (var in = new GZIPInputStream(new ByteArrayInputStream(page.gzip()))) {
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(html);
+		}
+	}
+
+	@Test
+	void shouldBoundNumberOfHosts() {
+
+		for (int i = 0; i < 32; ++i) {
+			pageCache.indexPage(URI.create("https://host%d/img/banner_w_1500.png".formatted(i)));
+		}
+		var uri = URI.create("https://host0/img/banner_w_1500.png");
+		assertThat(pageCache.indexPage(uri)).isSameAs(pageCache.indexPage(uri));
+
+		uri = URI.create("https://host31/img/banner_w_1500.png");
+		assertThat(pageCache.indexPage(uri)).isNotSameAs(pageCache.indexPage(uri));
+	}
+}
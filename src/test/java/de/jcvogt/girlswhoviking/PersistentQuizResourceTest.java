@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+@TestProfile(PersistentQuizResourceTest.Persistent.class)
+class PersistentQuizResourceTest {
+
+	/**
+	 * Enables the result log and the snapshot of the managed store in a directory of its own for each run.
+	 */
+	public static class Persistent implements QuarkusTestProfile {
+
+		private static final Path DIRECTORY;
+
+		static {
+			try {
+				DIRECTORY = Files.createTempDirectory("girlswhoviking");
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public Map<String, String> getConfigOverrides() {
+			return Map.of(
+				"girlswhoviking.result-log.directory", DIRECTORY.resolve("result-log").toString(),
+				"girlswhoviking.store.snapshot-file", DIRECTORY.resolve("sessions.bin").toString());
+		}
+	}
+
+	@Test
+	void shouldLogResults() {
+
+		for (int i = 0; i < 3; ++i) {
+			RestAssured.given()
+				.contentType(ContentType.JSON)
+				.body("{\"answers\": [0, 1, 1]}")
+				.when().post("/api/score")
+				.then()
+				.statusCode(200);
+		}
+
+		RestAssured.given()
+			.when().get("/analytics/results")
+			.then()
+			.statusCode(200)
+			.body("find { it.quiz == '' }.total", equalTo(3));
+
+		RestAssured.given()
+			.when().get("/q/metrics")
+			.then()
+			.statusCode(200)
+			.body(containsString("quiz_results_logged_total{result=\"written\"}"));
+	}
+}
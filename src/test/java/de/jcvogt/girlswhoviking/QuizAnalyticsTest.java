@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.assertj.core.groups.Tuple;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class QuizAnalyticsTest {
+
+	private final AtomicLong ticker = new AtomicLong();
+
+	private static CompiledDefinition definition(String question) {
+		return CompiledDefinition.of(QuizFixtures.definition(question));
+	}
+
+	@Test
+	void shouldRecordAnswersAndOutcomes() {
+
+		var analytics = new QuizAnalytics(4, ticker::get);
+		var definition = definition("1");
+		analytics.answered("", definition, 0, 1);
+		analytics.answered("", definition, 0, 1);
+		analytics.answered("", definition, 0, 0);
+		analytics.finished("", definition, 1);
+
+		assertThat(analytics.snapshot()).singleElement().satisfies(statistics -> {
+			assertThat(statistics.quiz()).isEmpty();
+			assertThat(statistics.version()).isEqualTo(definition.version());
+			assertThat(statistics.questions()).singleElement().satisfies(question -> {
+				assertThat(question.question()).isEqualTo("1");
+				assertThat(question.answers()).containsExactly(
+					new QuizAnalytics.Count("x", 1, 1, 1, 1), new QuizAnalytics.Count("y", 2, 2, 2, 2));
+			});
+			assertThat(statistics.outcomes()).containsExactly(
+				new QuizAnalytics.Count("a", 0, 0, 0, 0), new QuizAnalytics.Count("b", 1, 1, 1, 1));
+		});
+	}
+
+	@Test
+	void shouldKeepStatisticsForBoundedNumberOfDefinitions() {
+
+		var analytics = new QuizAnalytics(2, ticker::get);
+		var first = definition("1");
+		var second = definition("2");
+		var third = definition("3");
+		analytics.finished("", first, 0);
+		analytics.finished("", second, 0);
+		analytics.finished("saga", third, 0);
+		analytics.finished("", second, 0);
+
+		assertThat(analytics.snapshot())
+			.extracting(QuizAnalytics.QuizStatistics::quiz, QuizAnalytics.QuizStatistics::version)
+			.containsExactly(
+				Tuple.tuple("", second.version()),
+				Tuple.tuple("saga", third.version()));
+	}
+
+	@Test
+	void shouldShareStatisticsOfRecompiledDefinitions() {
+
+		var analytics = new QuizAnalytics(2, ticker::get);
+		var definition = definition("1");
+		var recompiled = definition("1");
+		analytics.finished("saga", definition, 0);
+		analytics.finished("saga", recompiled, 0);
+		analytics.finished("saga", recompiled, 1);
+		analytics.finished("", recompiled, 1);
+
+		assertThat(analytics.snapshot())
+			.extracting(QuizAnalytics.QuizStatistics::quiz, QuizAnalytics.QuizStatistics::outcomes)
+			.containsExactly(
+				Tuple.tuple("", List.of(
+					new QuizAnalytics.Count("a", 0, 0, 0, 0), new QuizAnalytics.Count("b", 1, 1, 1, 1))),
+				Tuple.tuple("saga", List.of(
+					new QuizAnalytics.Count("a", 2, 2, 2, 2), new QuizAnalytics.Count("b", 1, 1, 1, 1))));
+	}
+
+	@Test
+	void shouldRecordWithoutAllocating() {
+
+		assumeThat(ManagementFactory.getThreadMXBean()).isInstanceOf(com.sun.management.ThreadMXBean.class);
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeThat(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()).isTrue();
+
+		var analytics = new QuizAnalytics(2, ticker::get);
+		var definition = definition("1");
+		var recompiled = definition("1");
+		var threadId = Thread.currentThread().getId();
+		var recordings = 10_000;
+		for (int round = 0; round < 2; round++) {
+			var before = threads.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < recordings; i++) {
+				analytics.answered("saga", i % 2 == 0 ? definition : recompiled, 0, i % 2);
+				analytics.finished("saga", definition, i % 2);
+			}
+			var allocated = threads.getThreadAllocatedBytes(threadId) - before;
+			if (round > 0) {
+				// Allow for the measurement itself, any allocation per recording would be a multiple of this
+				assertThat(allocated).isLessThan(recordings);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Michael J. Simons
+ */
+class QuizCatalogTest {
+
+	private static final String DEFINITION = """
+		{"outcomes": [{"name": "a"}], "questions": [{"value": "%s", "answers": [{"value": "x", "increments": [1]}]}]}""";
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void shouldLoadDefinitionsOnFirstUse(@TempDir Path directory) throws IOException {
+
+		Files.writeString(directory.resolve("saga.json"), DEFINITION.formatted("1"));
+		var tasks = new ArrayList<Runnable>();
+		var catalog = new QuizCatalog(Optional.of(directory), 2, tasks::add, registry);
+
+		var first = catalog.get("saga").toCompletableFuture();
+		var second = catalog.get("saga").toCompletableFuture();
+		assertThat(first).isNotDone().isSameAs(second);
+		assertThat(tasks).hasSize(1);
+
+		tasks.get(0).run();
+		var definitions = first.join().orElseThrow();
+		assertThat(definitions.id()).isEqualTo("saga");
+		assertThat(definitions.current().definition().questions()).extracting(Quiz.Question::value).containsExactly("1");
+		assertThat(catalog.get("saga").toCompletableFuture()).isCompletedWithValue(Optional.of(definitions));
+
+		assertThat(registry.get("quiz.definitions.loads").tag("result", "success").counter().count()).isOne();
+		assertThat(registry.get("quiz.definitions.requests").tag("result", "miss").counter().count()).isOne();
+		assertThat(registry.get("quiz.definitions.requests").tag("result", "hit").counter().count()).isEqualTo(2.0);
+		assertThat(registry.get("quiz.definitions.cached").gauge().value()).isOne();
+	}
+
+	@Test
+	void shouldPreferUpToDatePrecompiledDefinitions(@TempDir Path directory) throws IOException {
+
+		var json = Files.writeString(directory.resolve("saga.json"), DEFINITION.formatted("1"));
+		var other = Files.writeString(directory.resolve("other.json"), DEFINITION.formatted("2"));
+		var precompiled = QuizService.readDefinition(other);
+		Files.write(directory.resolve("saga.bin"), DefinitionCodec.encode(precompiled, Files.readAllBytes(json)));
+
+		var catalog = new QuizCatalog(Optional.of(directory), 2, Runnable::run, registry);
+		assertThat(catalog.get("saga").toCompletableFuture().join()).hasValueSatisfying(definitions ->
+			assertThat(definitions.current().definition().questions()).extracting(Quiz.Question::value)
+				.containsExactly("2"));
+
+		Files.writeString(json, DEFINITION.formatted("3"));
+		catalog = new QuizCatalog(Optional.of(directory), 2, Runnable::run, new SimpleMeterRegistry());
+		assertThat(catalog.get("saga").toCompletableFuture().join()).hasValueSatisfying(definitions ->
+			assertThat(definitions.current().definition().questions()).extracting(Quiz.Question::value)
+				.containsExactly("3"));
+	}
+
+	@Test
+	void shouldEvictLeastRecentlyUsedDefinitions(@TempDir Path directory) throws IOException {
+
+		for (var id : new String[] {"a", "b", "c"}) {
+			Files.writeString(directory.resolve(id + ".json"), DEFINITION.formatted(id));
+		}
+		var catalog = new QuizCatalog(Optional.of(directory), 2, Runnable::run, registry);
+		var a = catalog.get("a").toCompletableFuture().join();
+		catalog.get("b");
+		catalog.get("a");
+		catalog.get("c");
+
+		assertThat(catalog.size()).isEqualTo(2);
+		assertThat(catalog.get("a").toCompletableFuture().join()).isSameAs(a);
+		assertThat(registry.get("quiz.definitions.evicted").counter().count()).isOne();
+		assertThat(registry.get("quiz.definitions.requests").tag("result", "miss").counter().count()).isEqualTo(3.0);
+
+		catalog.get("b");
+		assertThat(registry.get("quiz.definitions.loads").tag("result", "success").counter().count()).isEqualTo(4.0);
+	}
+
+	@Test
+	void shouldNotCacheUnknownOrInvalidQuizzes(@TempDir Path directory) throws IOException {
+
+		Files.writeString(directory.resolve("saga.json"), DEFINITION.formatted("1"));
+		Files.writeString(directory.resolve("broken.json"), "{\"outcomes\": [}");
+		Executor executor = Runnable::run;
+		var catalog = new QuizCatalog(Optional.of(directory), 1, executor, registry);
+		var saga = catalog.get("saga").toCompletableFuture().join().orElseThrow();
+
+		for (var id : new String[] {"missing", "broken", "../broken", "missing-too"}) {
+			assertThat(catalog.get(id).toCompletableFuture().join()).isEmpty();
+		}
+		assertThat(catalog.size()).isOne();
+		assertThat(catalog.get("saga").toCompletableFuture().join()).hasValueSatisfying(definitions ->
+			assertThat(definitions).isSameAs(saga));
+		assertThat(registry.get("quiz.definitions.loads").tag("result", "success").counter().count()).isOne();
+		assertThat(registry.get("quiz.definitions.loads").tag("result", "failure").counter().count()).isOne();
+		assertThat(registry.get("quiz.definitions.evicted").counter().count()).isZero();
+
+		var withoutDirectory = new QuizCatalog(Optional.empty(), 2, executor, new SimpleMeterRegistry());
+		assertThat(withoutDirectory.get("saga").toCompletableFuture().join()).isEmpty();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Definitions shared by the unit tests, kept apart from the dummy questions so that the tests can tell at a glance
+ * which answer leads to which outcome.
+ *
+ * @author Michael J. Simons
+ */
+final class QuizFixtures {
+
+	/**
+	 * @param names the names of the outcomes
+	 * @return outcomes with the given names and placeholders for everything else
+	 */
+	static List<Quiz.Outcome> outcomes(String... names) {
+		return Arrays.stream(names).map(name -> new Quiz.Outcome(name, "t", "d", "q", null)).toList();
+	}
+
+	/**
+	 * Creates a definition with the outcomes {@literal a} and {@literal b} and the given questions, each having the
+	 * answer {@literal x} counting for {@literal a} and {@literal y} counting for {@literal b}.
+	 *
+	 * @param questions the questions
+	 * @return the definition
+	 */
+	static Quiz.Definition definition(String... questions) {
+		var answers = List.of(new Quiz.Answer("x", List.of(1, 0)), new Quiz.Answer("y", List.of(0, 1)));
+		return new Quiz.Definition(outcomes("a", "b"),
+			Arrays.stream(questions).map(question -> new Quiz.Question(question, answers)).toList());
+	}
+
+	private QuizFixtures() {
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.nullValue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+class QuizResourceTest {
+
+	@Test
+	void shouldKeepQuizInManagedStore() {
+
+		var sessionId = RestAssured.given()
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.header("Set-Cookie", containsString("HttpOnly"))
+			.header(ServerTiming.HEADER, nullValue())
+			.body(containsString("Frage 1"))
+			.extract().cookie(ManagedQuizStore.COOKIE_NAME);
+
+		for (int i = 0; i < 3; ++i) {
+			RestAssured.given()
+				.redirects().follow(false)
+				.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+				.formParam("selectedAnswer", i == 0 ? 0 : 1)
+				.when().post("/answer")
+				.then()
+				.statusCode(303)
+				.header("Set-Cookie", nullValue())
+				.header("Location", containsString(i == 2 ? "/result" : "/start"));
+		}
+
+		RestAssured.given()
+			.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+			.when().get("/result")
+			.then()
+			.statusCode(200)
+			.body(containsString("Du bist <strong>Tinna</strong>"));
+
+		RestAssured.given()
+			.when().get("/analytics")
+			.then()
+			.statusCode(200)
+			.body("find { it.quiz == '' }.outcomes.find { it.value == 'Tinna' }.total", greaterThanOrEqualTo(1))
+			.body("find { it.quiz == '' }.questions[0].answers[0].lastMinute", greaterThanOrEqualTo(1));
+
+		RestAssured.given()
+			.when().get("/q/metrics")
+			.then()
+			.statusCode(200)
+			.body(containsString("quiz_sessions_live"))
+			.body(containsString("quiz_sessions_created_total"))
+			.body(containsString("quiz_sessions_evicted_total{cause=\"capacity\""))
+			.body(containsString("quiz_sessions_memory_bytes"))
+			.body(containsString("http_server_requests_seconds_bucket{method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/start\""))
+			.body(matchesPattern("(?s).*quiz_requests_seconds_bucket\\{[^}]*endpoint=\"answer\"[^}]*quiz=\"default\".*"))
+			.body(containsString("quiz_evaluate_seconds_count"))
+			.body(containsString("quiz_result_seconds_bucket"))
+			.body(containsString("quiz_template_render_seconds_count{template=\"quiz\""))
+			.body(containsString("quiz_sessions_creation_seconds_count"))
+			.body(containsString("quiz_results_backlog"))
+			.body(containsString("quiz_definitions_load_seconds_count{source=\"classpath\""));
+	}
+
+	@Test
+	void shouldScoreEachQuestionOnce() {
+
+		var sessionId = RestAssured.given()
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.body(containsString("name=\"question\" type=\"hidden\" value=\"1\""))
+			.extract().cookie(ManagedQuizStore.COOKIE_NAME);
+
+		for (int i = 0; i < 2; ++i) {
+			RestAssured.given()
+				.redirects().follow(false)
+				.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+				.formParam("question", 1)
+				.formParam("selectedAnswer", 0)
+				.when().post("/answer")
+				.then()
+				.statusCode(303)
+				.header("Location", containsString("/start"));
+		}
+
+		RestAssured.given()
+			.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.body(containsString("Frage 2"))
+			.body(containsString("name=\"question\" type=\"hidden\" value=\"2\""));
+	}
+
+	@Test
+	void shouldRejectIllegalAnswers() {
+
+		var sessionId = RestAssured.given()
+			.redirects().follow(false)
+			.formParam("question", 1)
+			.formParam("selectedAnswer", 42)
+			.when().post("/answer")
+			.then()
+			.statusCode(400)
+			.header("Cache-Control", "no-store")
+			.extract().cookie(ManagedQuizStore.COOKIE_NAME);
+
+		RestAssured.given()
+			.redirects().follow(false)
+			.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+			.formParam("question", 1)
+			.formParam("selectedAnswer", -1)
+			.when().post("/answer")
+			.then()
+			.statusCode(400)
+			.header("Set-Cookie", nullValue());
+
+		RestAssured.given()
+			.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.body(containsString("name=\"question\" type=\"hidden\" value=\"1\""));
+	}
+
+	@Test
+	void shouldHostQuizzesById() {
+
+		var cookieName = ManagedQuizStore.COOKIE_NAME + "-saga";
+		var sessionId = RestAssured.given()
+			.when().get("/quiz/saga/start")
+			.then()
+			.statusCode(200)
+			.body(containsString("Frage 1"))
+			.body(containsString("action=\"/quiz/saga/answer\""))
+			.extract().cookie(cookieName);
+
+		for (int i = 0; i < 3; ++i) {
+			RestAssured.given()
+				.redirects().follow(false)
+				.cookie(cookieName, sessionId)
+				.formParam("selectedAnswer", i == 0 ? 0 : 1)
+				.when().post("/quiz/saga/answer")
+				.then()
+				.statusCode(303)
+				.header("Location", containsString(i == 2 ? "/quiz/saga/result" : "/quiz/saga/start"));
+		}
+
+		RestAssured.given()
+			.cookie(cookieName, sessionId)
+			.when().get("/quiz/saga/result")
+			.then()
+			.statusCode(200)
+			.body(containsString("Du bist <strong>Tinna</strong>"))
+			.body(containsString("href=\"/quiz/saga/start\""));
+
+		RestAssured.given()
+			.when().get("/quiz/unknown/start")
+			.then()
+			.statusCode(404);
+
+		RestAssured.given()
+			.when().get("/q/metrics")
+			.then()
+			.statusCode(200)
+			.body(containsString("quiz_definitions_cached"))
+			.body(containsString("quiz_definitions_loads_total{result=\"success\""))
+			.body(containsString("quiz_definitions_evicted_total"));
+	}
+}
@@ -17,11 +17,19 @@ package de.jcvogt.girlswhoviking;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.quarkus.test.junit.QuarkusTest;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
 import javax.inject.Inject;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * @author Michael J. Simons
@@ -62,4 +70,37 @@ class QuizServiceTest {
 		assertThat(quiz.evaluate(1)).isTrue();
 		assertThat(quiz.getResult()).map(Quiz.Outcome::name).hasValue("Tinna");
 	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	void shouldKeepSessionModeInManagedStore() {
+
+		var quizStore = quizService.quizStore(QuizStore.Mode.SESSION, Optional.empty(), 10, Duration.ofMinutes(1),
+			Optional.empty(), new QuizCatalog(Optional.empty(), 1, Runnable::run, new SimpleMeterRegistry()),
+			new SimpleMeterRegistry());
+		assertThat(quizStore).isInstanceOf(ManagedQuizStore.class);
+	}
+
+	@Test
+	void shouldReloadExternalDefinitions(@TempDir Path directory) throws IOException {
+
+		var file = directory.resolve("questions.json");
+		Files.writeString(file, """
+			{"outcomes": [{"name": "a"}], "questions": [{"value": "1", "answers": [{"value": "x", "increments": [1]}]}]}""");
+		var service = new QuizService("questions.json", Optional.of(file.toString()), new SimpleMeterRegistry());
+		var initial = service.getCompiledDefinition();
+		var quiz = service.newQuiz();
+
+		Files.writeString(file, "{\"outcomes\": [}");
+		service.reload();
+		assertThat(service.getCompiledDefinition()).isSameAs(initial);
+
+		Files.writeString(file, """
+			{"outcomes": [{"name": "a"}], "questions": [{"value": "2", "answers": [{"value": "x", "increments": [1]}]}]}""");
+		service.reload();
+		assertThat(service.getCompiledDefinition()).isNotSameAs(initial);
+		assertThat(service.getDefinition().questions()).extracting(Quiz.Question::value).containsExactly("2");
+		assertThat(service.getDefinitions().get(initial.version())).containsSame(initial);
+		assertThat(quiz.getCompiledDefinition()).isSameAs(initial);
+	}
 }
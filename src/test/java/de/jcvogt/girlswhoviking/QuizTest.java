@@ -18,7 +18,9 @@ package de.jcvogt.girlswhoviking;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -63,6 +65,98 @@ class QuizTest {
 			.withMessage("Illegal answer (42)");
 	}
 
+	@Test
+	void shouldKeepOrderOfAnswersStable() {
+
+		var answers = List.of(new Quiz.Answer("a", List.of()), new Quiz.Answer("b", List.of()),
+			new Quiz.Answer("c", List.of()));
+		var definition = new Quiz.Definition(QuizFixtures.outcomes("a", "b"), List.of(new Quiz.Question("1", answers)));
+		var quiz = new Quiz(definition);
+
+		var indexes = quiz.getCurrentQuestion().map(Quiz.CurrentQuestion::indexes).orElseThrow();
+		assertThat(indexes).containsExactlyInAnyOrder(0, 1, 2);
+		assertThat(quiz.getCurrentQuestion()).map(Quiz.CurrentQuestion::indexes).containsSame(indexes);
+		assertThat(quiz.getRandomName()).isEqualTo(quiz.getRandomName());
+
+		var restored = new Quiz(definition, quiz.getState());
+		assertThat(restored.getCurrentQuestion()).map(Quiz.CurrentQuestion::indexes).hasValue(indexes);
+		assertThat(restored.getRandomName()).isEqualTo(quiz.getRandomName());
+	}
+
+	@Test
+	void shouldIgnoreStaleAndDuplicateAnswers() {
+
+		var quiz = new Quiz(QuizFixtures.definition("1", "2"));
+
+		assertThat(quiz.answer(1, 0)).isNull();
+		assertThat(quiz.answer(0, 1)).satisfies(state -> {
+			assertThat(state.idx()).isOne();
+			assertThat(state.outcome()).isEqualTo(-1);
+		});
+		assertThat(quiz.answer(0, 0)).isNull();
+		assertThat(quiz.answer(1, 1)).satisfies(state -> {
+			assertThat(state.idx()).isEqualTo(2);
+			assertThat(state.counts()).containsExactly(0, 2);
+			assertThat(state.outcome()).isOne();
+		});
+		assertThat(quiz.answer(1, 1)).isNull();
+		assertThat(quiz.getState().counts()).containsExactly(0, 2);
+		assertThatIllegalArgumentException().isThrownBy(() -> new Quiz(quiz.getCompiledDefinition()).answer(0, 2))
+			.withMessage("Illegal answer (2)");
+	}
+
+	@Test
+	void shouldFinishEarlyOnceTheOutcomeIsDecided() {
+
+		var definition = CompiledDefinition.of(QuizFixtures.definition("1", "2", "3"));
+
+		var quiz = new Quiz(definition);
+		assertThat(quiz.answer(0, 1, true).outcome()).isEqualTo(-1);
+		assertThat(quiz.answer(1, 1, true)).satisfies(state -> {
+			assertThat(state.idx()).isEqualTo(2);
+			assertThat(state.outcome()).isOne();
+			assertThat(state.answers()).containsExactly(1, 1, -1);
+		});
+		assertThat(quiz.isDone()).isTrue();
+		assertThat(quiz.getCurrentQuestion()).isEmpty();
+		assertThat(quiz.getResult()).map(Quiz.Outcome::name).hasValue("b");
+		assertThat(quiz.answer(2, 0, true)).isNull();
+
+		var restored = new Quiz(definition, quiz.getState());
+		assertThat(restored.isDone()).isTrue();
+		assertThat(restored.getResult()).map(Quiz.Outcome::name).hasValue("b");
+
+		var complete = new Quiz(definition);
+		complete.answer(0, 1);
+		assertThat(complete.answer(1, 1).outcome()).isEqualTo(-1);
+		assertThat(complete.isDone()).isFalse();
+	}
+
+	@Test
+	void shouldCountConcurrentAnswersToTheSameQuestionOnce() throws InterruptedException {
+
+		var quiz = new Quiz(QuizFixtures.definition("1", "2"));
+
+		var accepted = new AtomicInteger();
+		var threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; ++i) {
+			var thread = new Thread(() -> {
+				if (quiz.answer(0, 0) != null) {
+					accepted.incrementAndGet();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (var thread : threads) {
+			thread.join();
+		}
+
+		assertThat(accepted).hasValue(1);
+		assertThat(quiz.getState().idx()).isOne();
+		assertThat(quiz.getState().counts()).containsExactly(1, 0);
+	}
+
 	@Nested
 	class CurrentQuestionTest {
 		@Test
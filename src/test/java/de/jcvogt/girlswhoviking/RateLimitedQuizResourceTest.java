@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.containsString;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+@TestProfile(RateLimitedQuizResourceTest.RateLimited.class)
+class RateLimitedQuizResourceTest {
+
+	/**
+	 * Allows two answers, resets or scorings per client and minute.
+	 */
+	public static class RateLimited implements QuarkusTestProfile {
+
+		@Override
+		public Map<String, String> getConfigOverrides() {
+			return Map.of("girlswhoviking.admission.rate", "0.0333", "girlswhoviking.admission.burst", "2");
+		}
+	}
+
+	@Test
+	void shouldRejectClientsExceedingTheirRate() {
+
+		for (var path : new String[] {"/answer", "/quiz/saga/reset"}) {
+			RestAssured.given()
+				.redirects().follow(false)
+				.formParam("selectedAnswer", 0)
+				.when().post(path)
+				.then()
+				.statusCode(303);
+		}
+
+		RestAssured.given()
+			.redirects().follow(false)
+			.formParam("selectedAnswer", 0)
+			.when().post("/answer")
+			.then()
+			.statusCode(429)
+			.header("Retry-After", "31");
+
+		RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0, 1, 1]}")
+			.when().post("/api/score")
+			.then()
+			.statusCode(429);
+
+		RestAssured.given()
+			.when().get("/start")
+			.then()
+			.statusCode(200);
+
+		RestAssured.given()
+			.when().get("/q/metrics")
+			.then()
+			.statusCode(200)
+			.body(containsString("quiz_admission_rejected_total{cause=\"rate\"} 2.0"));
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Michael J. Simons
+ */
+class ResultLogTest {
+
+	private static final String VERSION = "0123456789ab";
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shouldReplayWrittenResults() throws IOException {
+
+		try (var log = ResultLog.open(directory, 4096, 16, 16, registry)) {
+			assertThat(log.append(new ResultLog.Entry("", VERSION, 1L, 1, new int[] {0, 1, -1}))).isTrue();
+			assertThat(log.append(new ResultLog.Entry("saga", VERSION, 2L, 0, new int[] {1}))).isTrue();
+			assertThat(log.append(new ResultLog.Entry("", VERSION, 3L, 1, new int[] {1, 1, 1}))).isTrue();
+		}
+		assertThat(registry.get("quiz.results.logged").tag("result", "written").counter().count()).isEqualTo(3.0);
+
+		var entries = new ArrayList<ResultLog.Entry>();
+		ResultLog.replay(directory, entries::add);
+		assertThat(entries).hasSize(3);
+		assertThat(entries.get(0).quizId()).isEmpty();
+		assertThat(entries.get(0).version()).isEqualTo(VERSION);
+		assertThat(entries.get(0).timestamp()).isEqualTo(1L);
+		assertThat(entries.get(0).answers()).containsExactly(0, 1, -1);
+		assertThat(entries.get(1).quizId()).isEqualTo("saga");
+
+		try (var log = ResultLog.open(directory, 4096, 16, 16, new SimpleMeterRegistry())) {
+			assertThat(log.totals()).containsExactly(
+				new ResultLog.Total("", VERSION, 1, 2), new ResultLog.Total("saga", VERSION, 0, 1));
+		}
+	}
+
+	@Test
+	void shouldStartNewSegmentsWhenFull() throws IOException {
+
+		try (var log = ResultLog.open(directory, 128, 16, 256, registry)) {
+			for (int i = 0; i < 20; ++i) {
+				log.append(new ResultLog.Entry("", VERSION, i, i % 2, new int[] {0, 1, 1}));
+			}
+		}
+		try (var files = Files.list(directory)) {
+			assertThat(files.count()).isGreaterThan(1);
+		}
+
+		var timestamps = new ArrayList<Long>();
+		ResultLog.replay(directory, entry -> timestamps.add(entry.timestamp()));
+		assertThat(timestamps).hasSize(20).isSorted();
+	}
+
+	@Test
+	void shouldStopAtCorruptRecords() throws IOException {
+
+		try (var log = ResultLog.open(directory, 4096, 16, 16, registry)) {
+			log.append(new ResultLog.Entry("", VERSION, 1L, 0, new int[] {0}));
+			log.append(new ResultLog.Entry("", VERSION, 2L, 1, new int[] {1}));
+		}
+		try (var files = Files.list(directory); var channel = FileChannel.open(files
+			.filter(f -> f.getFileName().toString().endsWith(".log")).findFirst().orElseThrow(),
+			StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			var header = ByteBuffer.allocate(4);
+			channel.read(header, 5);
+			var secondRecord = 5 + 8 + header.flip().getInt() + 8;
+			channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), secondRecord);
+		}
+
+		var entries = new ArrayList<ResultLog.Entry>();
+		ResultLog.replay(directory, entries::add);
+		assertThat(entries).extracting(ResultLog.Entry::timestamp).containsExactly(1L);
+	}
+
+	@Test
+	void shouldCheckpointTotalsAndDeleteOldSegments() throws IOException {
+
+		try (var log = ResultLog.open(directory, 128, 0, 256, registry)) {
+			for (int i = 0; i < 10; ++i) {
+				log.append(new ResultLog.Entry("", VERSION, i, i % 2, new int[] {0, 1, 1}));
+			}
+		}
+		try (var files = Files.list(directory)) {
+			assertThat(files).extracting(f -> f.getFileName().toString()).containsExactly("checkpoint.bin");
+		}
+
+		for (int i = 0; i < 2; ++i) {
+			try (var log = ResultLog.open(directory, 128, 0, 256, new SimpleMeterRegistry())) {
+				assertThat(log.totals()).containsExactly(
+					new ResultLog.Total("", VERSION, 0, 5 + i), new ResultLog.Total("", VERSION, 1, 5));
+				log.append(new ResultLog.Entry("", VERSION, 10L + i, 0, new int[] {0, 1, 1}));
+			}
+		}
+
+		Files.write(directory.resolve("checkpoint.bin"), new byte[] {1, 2, 3});
+		try (var log = ResultLog.open(directory, 128, 0, 256, new SimpleMeterRegistry())) {
+			assertThat(log.totals()).isEmpty();
+		}
+	}
+
+	@Test
+	void shouldIgnoreResultsWhenDisabled() {
+
+		var log = ResultLog.disabled(registry);
+		assertThat(log.append(new ResultLog.Entry("", VERSION, 1L, 0, new int[] {0}))).isFalse();
+		assertThat(log.totals()).isEmpty();
+		log.close();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+class ScoringResourceTest {
+
+	@Test
+	void shouldScoreCompleteQuizzes() {
+
+		String resultUrl = RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0, 1, 1]}")
+			.when().post("/api/score")
+			.then()
+			.statusCode(200)
+			.body("quiz", equalTo(""))
+			.body("outcome.name", equalTo("Tinna"))
+			.body("resultUrl", endsWith("/results/Tinna"))
+			.extract().path("resultUrl");
+
+		RestAssured.given()
+			.when().get(resultUrl)
+			.then()
+			.statusCode(200)
+			.header("Cache-Control", containsString("public"))
+			.body(containsString("Du bist <strong>Tinna</strong>"))
+			.body(containsString("href=\"/start\""));
+
+		RestAssured.given()
+			.when().get("/results/Unknown")
+			.then()
+			.statusCode(404);
+	}
+
+	@Test
+	void shouldScoreHostedQuizzes() {
+
+		String resultUrl = RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0, 1, 1]}")
+			.when().post("/api/quiz/saga/score")
+			.then()
+			.statusCode(200)
+			.body("quiz", equalTo("saga"))
+			.body("outcome.name", equalTo("Tinna"))
+			.body("resultUrl", endsWith("/quiz/saga/results/Tinna"))
+			.extract().path("resultUrl");
+
+		RestAssured.given()
+			.when().get(resultUrl)
+			.then()
+			.statusCode(200)
+			.body(containsString("href=\"/quiz/saga/start\""));
+
+		RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0]}")
+			.when().post("/api/quiz/unknown/score")
+			.then()
+			.statusCode(404);
+	}
+
+	@Test
+	void shouldRejectInvalidAnswers() {
+
+		RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0, 1]}")
+			.when().post("/api/score")
+			.then()
+			.statusCode(400)
+			.body("message", equalTo("Expected 3 answers, got 2"));
+
+		RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0, 1, 7]}")
+			.when().post("/api/score")
+			.then()
+			.statusCode(400)
+			.body("message", equalTo("Illegal answer (7) to question 3"));
+
+		RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{\"answers\": [0, null, 1]}")
+			.when().post("/api/score")
+			.then()
+			.statusCode(400);
+
+		RestAssured.given()
+			.contentType(ContentType.JSON)
+			.body("{}")
+			.when().post("/api/score")
+			.then()
+			.statusCode(400);
+	}
+}
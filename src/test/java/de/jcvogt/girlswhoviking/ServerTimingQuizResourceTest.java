@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+@TestProfile(ServerTimingQuizResourceTest.ServerTimingEnabled.class)
+class ServerTimingQuizResourceTest {
+
+	/**
+	 * Enables the Server-Timing header.
+	 */
+	public static class ServerTimingEnabled implements QuarkusTestProfile {
+
+		@Override
+		public Map<String, String> getConfigOverrides() {
+			return Map.of("girlswhoviking.server-timing.enabled", "true");
+		}
+	}
+
+	@Test
+	void shouldAddServerTiming() {
+
+		var sessionId = RestAssured.given()
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.header(ServerTiming.HEADER, allOf(containsString("session;"), containsString("render;"),
+				containsString("total;")))
+			.extract().cookie(ManagedQuizStore.COOKIE_NAME);
+
+		RestAssured.given()
+			.redirects().follow(false)
+			.cookie(ManagedQuizStore.COOKIE_NAME, sessionId)
+			.formParam("selectedAnswer", 0)
+			.when().post("/answer")
+			.then()
+			.statusCode(303)
+			.header(ServerTiming.HEADER, containsString("quiz;desc=\"Quiz state\""));
+
+		RestAssured.given()
+			.when().get("/")
+			.then()
+			.statusCode(200)
+			.header(ServerTiming.HEADER, containsString("render;"));
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.jcvogt.girlswhoviking.ServerTiming.Phase;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class ServerTimingTest {
+
+	@Test
+	void shouldReportMarkedPhases() {
+
+		var timing = ServerTiming.start(true, "test");
+		timing.mark(Phase.SESSION);
+		timing.mark(Phase.RENDER);
+		timing.mark(Phase.SESSION);
+
+		assertThat(timing.toHeaderValue(1_234_567)).matches(
+			"session;desc=\"Session lookup\";dur=\\d+\\.\\d{3}, render;desc=\"Rendering\";dur=\\d+\\.\\d{3}, total;dur=1\\.235");
+		assertThat(timing.addTo(Response.ok()).build().getHeaderString(ServerTiming.HEADER)).startsWith("session;");
+	}
+
+	@Test
+	void shouldDoNothingWhenDisabled() {
+
+		var timing = ServerTiming.start(false, "test");
+		assertThat(timing).isSameAs(ServerTiming.DISABLED);
+		timing.mark(Phase.QUIZ);
+		assertThat(timing.addTo(Response.ok()).build().getHeaderString(ServerTiming.HEADER)).isNull();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.jcvogt.girlswhoviking.SlidingCounter.Window;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class SlidingCounterTest {
+
+	private final AtomicLong ticker = new AtomicLong(-Duration.ofDays(3).toNanos());
+
+	private final SlidingCounter counter = new SlidingCounter(ticker::get);
+
+	@Test
+	void shouldCountPerWindow() {
+
+		counter.increment();
+		counter.increment();
+		assertThat(counter.sum(Window.MINUTE)).isEqualTo(2);
+
+		ticker.addAndGet(Duration.ofSeconds(59).toNanos());
+		counter.increment();
+		assertThat(counter.sum(Window.MINUTE)).isEqualTo(3);
+
+		ticker.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(counter.sum(Window.MINUTE)).isOne();
+		assertThat(counter.sum(Window.HOUR)).isEqualTo(3);
+
+		ticker.addAndGet(Duration.ofHours(2).toNanos());
+		counter.increment();
+		assertThat(counter.sum(Window.MINUTE)).isOne();
+		assertThat(counter.sum(Window.HOUR)).isOne();
+		assertThat(counter.sum(Window.DAY)).isEqualTo(4);
+
+		ticker.addAndGet(Duration.ofDays(1).toNanos());
+		assertThat(counter.sum(Window.DAY)).isZero();
+		assertThat(counter.total()).isEqualTo(4);
+	}
+
+	@Test
+	void shouldRestartReusedBuckets() {
+
+		counter.increment();
+		ticker.addAndGet(Duration.ofMinutes(1).toNanos());
+		counter.increment();
+		assertThat(counter.sum(Window.MINUTE)).isOne();
+		assertThat(counter.sum(Window.HOUR)).isEqualTo(2);
+	}
+
+	@Test
+	void shouldNotLoseConcurrentIncrements() throws InterruptedException {
+
+		var threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					counter.increment();
+				}
+			});
+			threads[i].start();
+		}
+		for (var thread : threads) {
+			thread.join();
+		}
+		assertThat(counter.total()).isEqualTo(40_000);
+		assertThat(counter.sum(Window.MINUTE)).isEqualTo(40_000);
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares time to first request and memory footprint of the native executable with the JVM build. Runs with
+ * {@code ./mvnw verify -Pnative} after the JVM build has been packaged with {@code ./mvnw package}; the results are
+ * written to {@literal target/startup-comparison.json}.
+ *
+ * @author Michael J. Simons
+ */
+class StartupComparisonIT {
+
+	private static final int RUNS = 3;
+
+	@Test
+	void nativeImageShouldStartFasterAndUseLessMemory() throws IOException {
+
+		var nativeImage = Path.of(System.getProperty("native.image.path"));
+		var jar = Path.of(System.getProperty("jvm.jar.path"));
+		Assumptions.assumeTrue(Files.isRegularFile(jar), "The JVM build must be packaged before comparing it with the native image");
+
+		var nativeResult = StartupMeasurement.measure("native", List.of(nativeImage.toString()), RUNS);
+		var jvmResult = StartupMeasurement.measure("jvm", List.of(ProcessHandle.current().info().command().orElse("java"), "-jar", jar.toString()), RUNS);
+		new ObjectMapper().writerWithDefaultPrettyPrinter()
+			.writeValue(Path.of(System.getProperty("startup.report.path")).toFile(), Map.of("native", nativeResult, "jvm", jvmResult));
+
+		assertThat(nativeResult.timeToFirstRequestMillis()).isLessThan(jvmResult.timeToFirstRequestMillis());
+		assertThat(nativeResult.rssKiB()).isLessThan(jvmResult.rssKiB());
+	}
+}
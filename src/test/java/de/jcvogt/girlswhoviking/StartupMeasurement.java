@@ -0,0 +1,194 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the packaged application as a separate process and measures the time until the first request to the quiz
+ * is answered and the resident set size afterwards. Reading the RSS requires Linux.
+ *
+ * @author Michael J. Simons
+ */
+final class StartupMeasurement {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+	/**
+	 * The result of one or more runs.
+	 *
+	 * @param name                     the name of the variant
+	 * @param timeToFirstRequestMillis the median time from starting the process to the first successful response
+	 * @param rssKiB                   the median resident set size after the first response
+	 */
+	record Result(String name, long timeToFirstRequestMillis, long rssKiB) {
+	}
+
+	/**
+	 * Starts the given command several times and reports the medians.
+	 *
+	 * @param name    the name of the variant
+	 * @param command the command starting the application; the http port is passed as system property
+	 * @param runs    the number of runs
+	 * @return the result
+	 */
+	static Result measure(String name, List<String> command, int runs) {
+
+		var times = new long[runs];
+		var rss = new long[runs];
+		for (int i = 0; i < runs; ++i) {
+			var run = measure(command);
+			times[i] = run[0];
+			rss[i] = run[1];
+		}
+		Arrays.sort(times);
+		Arrays.sort(rss);
+		return new Result(name, times[runs / 2], rss[runs / 2]);
+	}
+
+	private static long[] measure(List<String> command) {
+		try (var application = start(command)) {
+			return new long[] {application.timeToFirstRequestMillis(), application.rssKiB()};
+		}
+	}
+
+	/**
+	 * A started application.
+	 *
+	 * @param process                  the process of the application
+	 * @param port                     the http port of the application
+	 * @param timeToFirstRequestMillis the time from starting the process to the first successful response
+	 */
+	record Application(Process process, int port, long timeToFirstRequestMillis) implements AutoCloseable {
+
+		/**
+		 * {@return the base uri of the application}
+		 */
+		URI baseUri() {
+			return URI.create("http://localhost:" + port + "/");
+		}
+
+		/**
+		 * {@return the current resident set size of the application}
+		 */
+		long rssKiB() {
+			try {
+				return rss(process.pid());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Stops the application gracefully and waits for it to exit, so that anything written on shutdown is complete.
+		 */
+		@Override
+		public void close() {
+			process.destroy();
+			try {
+				if (!process.waitFor(TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				process.destroyForcibly();
+			}
+		}
+	}
+
+	/**
+	 * Starts the application and waits until it answers the first request to the quiz.
+	 *
+	 * @param command the command starting the application; the http port is passed as system property
+	 * @return the running application, must be closed after use
+	 */
+	static Application start(List<String> command) {
+
+		var port = freePort();
+		var fullCommand = new ArrayList<String>();
+		fullCommand.add(command.get(0));
+		fullCommand.add("-Dquarkus.http.port=" + port);
+		fullCommand.addAll(command.subList(1, command.size()));
+
+		var client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+		var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/start")).build();
+		Process process = null;
+		try {
+			var start = System.nanoTime();
+			process = new ProcessBuilder(fullCommand).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+			while (true) {
+				if (!process.isAlive()) {
+					throw new IllegalStateException("Application exited with " + process.exitValue());
+				}
+				if (System.nanoTime() - start > TIMEOUT.toNanos()) {
+					throw new IllegalStateException("Application did not answer within " + TIMEOUT);
+				}
+				try {
+					if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+						break;
+					}
+				} catch (ConnectException e) {
+					Thread.sleep(5);
+				}
+			}
+			var application = new Application(process, port, Duration.ofNanos(System.nanoTime() - start).toMillis());
+			process = null;
+			return application;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} finally {
+			if (process != null) {
+				process.destroy();
+			}
+		}
+	}
+
+	private static long rss(long pid) throws IOException {
+		return Files.readAllLines(Path.of("/proc", Long.toString(pid), "status")).stream()
+			.filter(line -> line.startsWith("VmRSS:"))
+			.map(line -> Long.parseLong(line.replaceAll("\\D", "")))
+			.findFirst()
+			.orElseThrow();
+	}
+
+	private static int freePort() {
+		try (var socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private StartupMeasurement() {
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.hamcrest.Matchers.containsString;
+
+import de.jcvogt.girlswhoviking.utils.Assets;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.RestAssured;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+@TestProfile(TokenModeQuizResourceTest.TokenMode.class)
+class TokenModeQuizResourceTest {
+
+	/**
+	 * Enables the token mode.
+	 */
+	public static class TokenMode implements QuarkusTestProfile {
+
+		@Override
+		public Map<String, String> getConfigOverrides() {
+			return Map.of("girlswhoviking.state-mode", "token", "girlswhoviking.token.secret", "geheim");
+		}
+	}
+
+	@Test
+	void shouldCarryStateInCookie() {
+
+		var token = RestAssured.given()
+			.when().get("/start")
+			.then()
+			.statusCode(200)
+			.header("Set-Cookie", containsString("HttpOnly"))
+			.body(containsString("Frage 1"))
+			.body(containsString("_slice_w_480."))
+			.extract().cookie(TokenQuizStore.COOKIE_NAME);
+
+		for (int i = 0; i < 3; ++i) {
+			token = RestAssured.given()
+				.redirects().follow(false)
+				.cookie(TokenQuizStore.COOKIE_NAME, token)
+				.formParam("selectedAnswer", i == 0 ? 0 : 1)
+				.when().post("/answer")
+				.then()
+				.statusCode(303)
+				.header("Location", containsString(i == 2 ? "/result" : "/start"))
+				.extract().cookie(TokenQuizStore.COOKIE_NAME);
+		}
+
+		RestAssured.given()
+			.cookie(TokenQuizStore.COOKIE_NAME, token)
+			.when().get("/result")
+			.then()
+			.statusCode(200)
+			.body(containsString("Du bist <strong>Tinna</strong>"))
+			.body(containsString("srcset=\"" + Assets.srcset("/img/tinna.jpg") + "\""));
+
+		RestAssured.given()
+			.redirects().follow(false)
+			.cookie(TokenQuizStore.COOKIE_NAME, token + "x")
+			.when().get("/result")
+			.then()
+			.statusCode(303);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class TokenQuizStoreTest {
+
+	private final Quiz.Definition definition = new Quiz.Definition(
+		QuizFixtures.outcomes("a", "b"),
+		List.of(
+			new Quiz.Question("1", List.of(new Quiz.Answer("x", List.of(1, 0)), new Quiz.Answer("y", List.of(0, 1)))),
+			new Quiz.Question("2", List.of(new Quiz.Answer("x", List.of(2, -1)), new Quiz.Answer("y", List.of(0, 1))))
+		)
+	);
+
+	private final CompiledDefinition compiledDefinition = CompiledDefinition.of(definition);
+
+	private final Definitions definitions = new Definitions(compiledDefinition);
+
+	private final TokenQuizStore store = new TokenQuizStore("secret".getBytes(StandardCharsets.UTF_8));
+
+	@Test
+	void shouldRoundTripState() {
+
+		var quiz = new Quiz(compiledDefinition);
+		quiz.evaluate(1);
+		quiz.evaluate(0);
+		quiz.getResult();
+
+		var restored = store.decode(definitions, store.encode(quiz));
+		var state = restored.getState();
+		assertThat(state.idx()).isEqualTo(2);
+		assertThat(state.counts()).containsExactly(2, 0);
+		assertThat(state.outcome()).isZero();
+		assertThat(state.seed()).isEqualTo(quiz.getState().seed());
+		assertThat(state.answers()).containsExactly(1, 0);
+		assertThat(restored.getResult()).map(Quiz.Outcome::name).hasValue("a");
+	}
+
+	@Test
+	void shouldRejectTamperedTokens() {
+
+		var token = store.encode(new Quiz(compiledDefinition, new Quiz.State(1, new int[] {0, 1}, -1)));
+		var otherPayload = store.encode(new Quiz(compiledDefinition, new Quiz.State(1, new int[] {0, 5}, -1)))
+			.split("\\.")[0];
+		var tampered = otherPayload + token.substring(token.indexOf('.'));
+		assertThatIllegalArgumentException().isThrownBy(() -> store.decode(definitions, tampered))
+			.withMessage("Invalid signature.");
+
+		var otherStore = new TokenQuizStore("other".getBytes(StandardCharsets.UTF_8));
+		assertThatIllegalArgumentException().isThrownBy(() -> otherStore.decode(definitions, token))
+			.withMessage("Invalid signature.");
+	}
+
+	@Test
+	void shouldRejectStatesNotMatchingTheDefinition() {
+
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> new Quiz(definition, new Quiz.State(3, new int[] {0, 0}, -1)))
+			.withMessage("Invalid question index (3)");
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> new Quiz(definition, new Quiz.State(0, new int[] {0}, -1)))
+			.withMessage("Invalid number of counts.");
+	}
+
+	@Test
+	void shouldRestoreQuizzesOnTheirDefinition() {
+
+		var quiz = new Quiz(compiledDefinition);
+		quiz.evaluate(1);
+		var token = store.encode(quiz);
+
+		var newDefinition = CompiledDefinition.of(new Quiz.Definition(definition.outcomes(),
+			definition.questions().subList(0, 1)));
+		definitions.activate(newDefinition);
+
+		var restored = store.decode(definitions, token);
+		assertThat(restored.getCompiledDefinition()).isSameAs(compiledDefinition);
+		assertThat(restored.getState().idx()).isOne();
+
+		var restarted = store.restart(definitions, restored, null);
+		assertThat(restarted.getCompiledDefinition()).isSameAs(newDefinition);
+		assertThat(restarted.getState().idx()).isZero();
+	}
+
+	@Test
+	void shouldRejectTokensOfUnknownDefinitions() {
+
+		var otherDefinition = CompiledDefinition.of(new Quiz.Definition(definition.outcomes(),
+			definition.questions().subList(1, 2)));
+		var token = store.encode(new Quiz(compiledDefinition));
+		assertThatIllegalArgumentException().isThrownBy(() -> store.decode(new Definitions(otherDefinition), token))
+			.withMessage("Unknown definition version.");
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Michael J. Simons
+ */
+class AssetPipelineTest {
+
+	@Test
+	void shouldFingerprintAndCompressAssets(@TempDir Path classes) throws IOException {
+
+		var css = Files.createDirectories(classes.resolve("META-INF/resources/css"));
+		var img = Files.createDirectories(classes.resolve("META-INF/resources/img"));
+		Files.writeString(css.resolve("simple.css"), "body { color: black; }".repeat(10));
+		Files.write(img.resolve("cover.small.jpg"), new byte[] {1, 2, 3});
+
+		var manifest = AssetPipeline.process(classes);
+		assertThat(manifest).containsOnlyKeys("/css/simple.css", "/img/cover.small.jpg");
+		assertThat(manifest.get("/css/simple.css")).matches("/css/simple\\.[0-9a-f]{10}\\.css");
+		assertThat(manifest.get("/img/cover.small.jpg")).matches("/img/cover\\.small\\.[0-9a-f]{10}\\.jpg");
+
+		var fingerprinted = classes.resolve("META-INF/resources" + manifest.get("/css/simple.css"));
+		try (var in = new GZIPInputStream(Files.newInputStream(Path.of(fingerprinted + ".gz")))) {
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(Files.readString(fingerprinted));
+		}
+		assertThat(Path.of(classes.resolve("META-INF/resources") + manifest.get("/img/cover.small.jpg") + ".gz"))
+			.doesNotExist();
+		assertThat(classes.resolve(Assets.MANIFEST)).content().contains("/css/simple.css=" + manifest.get("/css/simple.css"));
+
+		assertThat(AssetPipeline.process(classes)).isEqualTo(manifest);
+	}
+
+	@Test
+	void shouldScaleImagesToWidthLadder(@TempDir Path classes) throws IOException {
+
+		var img = Files.createDirectories(classes.resolve("META-INF/resources/img"));
+		ImageIO.write(new BufferedImage(1000, 200, BufferedImage.TYPE_INT_ARGB), "png", img.resolve("tinna_slice.png").toFile());
+		ImageIO.write(new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB), "jpg", img.resolve("tiny.jpg").toFile());
+
+		var manifest = AssetPipeline.process(classes);
+		assertThat(manifest).containsOnlyKeys("/img/tinna_slice.png", "/img/tinna_slice_w_480.png",
+			"/img/tinna_slice_w_870.png", "/img/tiny.jpg");
+		var scaled = ImageIO.read(img.resolve("tinna_slice_w_480.png").toFile());
+		assertThat(scaled.getWidth()).isEqualTo(480);
+		assertThat(scaled.getHeight()).isEqualTo(96);
+		assertThat(scaled.getColorModel().hasAlpha()).isTrue();
+
+		assertThat(classes.resolve(Assets.SRCSETS)).content().isEqualTo("/img/tinna_slice.png="
+			+ manifest.get("/img/tinna_slice_w_480.png") + " 480w, "
+			+ manifest.get("/img/tinna_slice_w_870.png") + " 870w, "
+			+ manifest.get("/img/tinna_slice.png") + " 1000w\n");
+
+		assertThat(AssetPipeline.process(classes)).isEqualTo(manifest);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
+import io.restassured.config.DecoderConfig;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+@QuarkusTest
+class AssetRoutesTest {
+
+	@Test
+	void shouldReferenceFingerprintedAssets() {
+		RestAssured.given()
+			.when().get("/")
+			.then()
+			.statusCode(200)
+			.body(containsString("href=\"" + Assets.url("/css/simple.css") + "\""))
+			.body(containsString(Assets.url("/img/banner_w_480.png") + " 480w"));
+	}
+
+	@Test
+	void shouldServeImmutablePrecompressedAssets() {
+
+		var url = Assets.url("/css/simple.css");
+		RestAssured.given()
+			.header("Accept-Encoding", "gzip")
+			.when().get(url)
+			.then()
+			.statusCode(200)
+			.header("Cache-Control", equalTo(AssetRoutes.IMMUTABLE))
+			.header("Content-Encoding", "gzip")
+			.header("Content-Type", containsString("text/css"))
+			.body(containsString("--accent"));
+
+		RestAssured.given()
+			.config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+			.when().get(url)
+			.then()
+			.statusCode(200)
+			.header("Content-Encoding", nullValue())
+			.body(containsString("--accent"));
+
+		RestAssured.given()
+			.when().get(Assets.url("/img/cover.small.jpg"))
+			.then()
+			.statusCode(200)
+			.header("Cache-Control", equalTo(AssetRoutes.IMMUTABLE))
+			.header("Content-Type", "image/jpeg");
+	}
+
+	@Test
+	void shouldServeScaledImages() {
+
+		assertThat(Assets.srcset("/img/tinna.jpg")).contains(Assets.url("/img/tinna_w_480.jpg") + " 480w");
+		RestAssured.given()
+			.header("Accept", "image/avif,image/webp,*/*")
+			.when().get(Assets.url("/img/tinna_w_480.jpg"))
+			.then()
+			.statusCode(200)
+			.header("Cache-Control", equalTo(AssetRoutes.IMMUTABLE))
+			.header("Content-Type", anyOf(equalTo("image/jpeg"), equalTo("image/webp"), equalTo("image/avif")));
+	}
+}
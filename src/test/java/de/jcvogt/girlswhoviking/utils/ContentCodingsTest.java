@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jcvogt.girlswhoviking.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Michael J. Simons
+ */
+class ContentCodingsTest {
+
+	@Test
+	void shouldOnlyCompressIfAccepted() {
+
+		assertThat(ContentCodings.acceptsGzip(null)).isFalse();
+		assertThat(ContentCodings.acceptsGzip("deflate, br")).isFalse();
+		assertThat(ContentCodings.acceptsGzip("gzip;q=0")).isFalse();
+		assertThat(ContentCodings.acceptsGzip("deflate, gzip;q=0.5")).isTrue();
+		assertThat(ContentCodings.acceptsGzip("*")).isTrue();
+	}
+
+	@Test
+	void shouldPreferExplicitCodingsOverTheWildcard() {
+
+		assertThat(ContentCodings.acceptsGzip("*;q=1, gzip;q=0")).isFalse();
+		assertThat(ContentCodings.acceptsGzip("gzip;q=0, *")).isFalse();
+		assertThat(ContentCodings.acceptsGzip("*;q=0, gzip")).isTrue();
+		assertThat(ContentCodings.acceptsGzip("br, *;q=0.1")).isTrue();
+	}
+
+	@Test
+	void shouldFindTheQualityAmongAllParameters() {
+
+		assertThat(ContentCodings.acceptsGzip("gzip;foo=1;q=0")).isFalse();
+		assertThat(ContentCodings.acceptsGzip("gzip; foo=1; Q=0.5")).isTrue();
+		assertThat(ContentCodings.acceptsMediaType("image/webp;foo=bar;q=0", "image/webp")).isFalse();
+	}
+
+	@Test
+	void shouldOnlyNegotiateExplicitlyAcceptedMediaTypes() {
+
+		var chrome = "text/html,application/xhtml+xml,image/avif,image/webp,image/apng,*/*;q=0.8";
+		assertThat(ContentCodings.acceptsMediaType(chrome, "image/avif")).isTrue();
+		assertThat(ContentCodings.acceptsMediaType(chrome, "image/webp")).isTrue();
+		assertThat(ContentCodings.acceptsMediaType("image/*,*/*;q=0.8", "image/webp")).isFalse();
+		assertThat(ContentCodings.acceptsMediaType("image/webp;q=0", "image/webp")).isFalse();
+		assertThat(ContentCodings.acceptsMediaType(null, "image/webp")).isFalse();
+	}
+}